@@ -0,0 +1,174 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Cost of a combined call (woven by scripts/bench.sh) against its hand-written equivalent (the *Manual benchmarks),
+// for every combination type, on a single receiver class (monomorphic) or on the people loop of HardWorkersStandard (megamorphic)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CombinationBenchmark {
+    static final int PEOPLE = 20;
+
+    @Param({ "monomorphic", "megamorphic" })
+    public String receivers;
+
+    Worker[] workers = new Worker[PEOPLE];
+    ManualWorker[] manualWorkers = new ManualWorker[PEOPLE];
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < PEOPLE; i++) {
+            switch (this.receivers.equals("monomorphic") ? 0 : i % 5) {
+            case 0:
+                this.workers[i] = new SeniorEngineer();
+                this.manualWorkers[i] = new ManualSeniorEngineer();
+                break;
+            case 1:
+                this.workers[i] = new Engineer();
+                this.manualWorkers[i] = new ManualEngineer();
+                break;
+            case 2:
+                this.workers[i] = new Manager();
+                this.manualWorkers[i] = new ManualManager();
+                break;
+            case 3:
+                this.workers[i] = new Intern();
+                this.manualWorkers[i] = new ManualIntern();
+                break;
+            default:
+                this.workers[i] = new Worker();
+                this.manualWorkers[i] = new ManualWorker();
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void or(Blackhole blackhole) {
+        for (Worker worker : this.workers)
+            blackhole.consume(worker.isHardWorker());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void orManual(Blackhole blackhole) {
+        for (ManualWorker worker : this.manualWorkers)
+            blackhole.consume(worker.isHardWorker());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void and(Blackhole blackhole) {
+        for (Worker worker : this.workers)
+            blackhole.consume(worker.isReliable());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void andManual(Blackhole blackhole) {
+        for (ManualWorker worker : this.manualWorkers)
+            blackhole.consume(worker.isReliable());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void sum(Blackhole blackhole) {
+        for (Worker worker : this.workers)
+            blackhole.consume(worker.hours());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void sumManual(Blackhole blackhole) {
+        for (ManualWorker worker : this.manualWorkers)
+            blackhole.consume(worker.hours());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void prod(Blackhole blackhole) {
+        for (Worker worker : this.workers)
+            blackhole.consume(worker.factor());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void prodManual(Blackhole blackhole) {
+        for (ManualWorker worker : this.manualWorkers)
+            blackhole.consume(worker.factor());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void collect(Blackhole blackhole) {
+        for (Worker worker : this.workers)
+            blackhole.consume(worker.skills());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void collectManual(Blackhole blackhole) {
+        for (ManualWorker worker : this.manualWorkers)
+            blackhole.consume(worker.skills());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void reverseOrder(Blackhole blackhole) {
+        for (Worker worker : this.workers)
+            blackhole.consume(worker.seniority());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void reverseOrderManual(Blackhole blackhole) {
+        for (ManualWorker worker : this.manualWorkers)
+            blackhole.consume(worker.seniority());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void standard(Blackhole blackhole) {
+        for (Worker worker : this.workers)
+            blackhole.consume(worker.shift());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void standardManual(Blackhole blackhole) {
+        for (ManualWorker worker : this.manualWorkers)
+            blackhole.consume(worker.shift());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void conditionalDefault(Blackhole blackhole) {
+        for (Worker worker : this.workers)
+            blackhole.consume(worker.pay());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public void conditionalDefaultManual(Blackhole blackhole) {
+        for (ManualWorker worker : this.manualWorkers)
+            blackhole.consume(worker.pay());
+    }
+}
@@ -0,0 +1,264 @@
+package bench;
+
+import ist.meic.pava.Combination;
+
+// Hierarchy woven by scripts/bench.sh (a class per receiver, so the people loop can be made megamorphic)
+// The methods read the level of the worker (and the interface ones the static overtime), so their results are not constants the JIT can fold
+class Worker {
+    static int events;
+    static int overtime = 5;
+
+    int level = 1;
+
+    @Combination("or")
+    public boolean isHardWorker() {
+        return this.level > 3;
+    }
+
+    @Combination("and")
+    public boolean isReliable() {
+        return this.level > 0;
+    }
+
+    @Combination("sum")
+    public int hours() {
+        return 10 * this.level;
+    }
+
+    @Combination("prod")
+    public long factor() {
+        return 2L * this.level;
+    }
+
+    @Combination("collect")
+    public int[] skills() {
+        return new int[] { this.level };
+    }
+
+    @Combination(value = "sum", reverseOrder = true)
+    public int seniority() {
+        return this.level;
+    }
+
+    @Combination("standard")
+    public int shift() {
+        return 8 * this.level;
+    }
+
+    @Combination("standard")
+    public int pay() {
+        return 100 * this.level;
+    }
+}
+
+interface Overtime {
+    @Combination("or")
+    default boolean isHardWorker() {
+        return Worker.overtime > 0;
+    }
+
+    @Combination("sum")
+    default int hours() {
+        return Worker.overtime;
+    }
+
+    @Combination("standard")
+    default void after_shift() {
+        Worker.events++;
+    }
+}
+
+class Engineer extends Worker {
+    @Combination("or")
+    public boolean isHardWorker() {
+        return this.level > 4;
+    }
+
+    @Combination("and")
+    public boolean isReliable() {
+        return this.level < 10;
+    }
+
+    @Combination("sum")
+    public int hours() {
+        return 12 * this.level;
+    }
+
+    @Combination("prod")
+    public long factor() {
+        return 3L * this.level;
+    }
+
+    @Combination("collect")
+    public int[] skills() {
+        return new int[] { 2 * this.level };
+    }
+
+    @Combination(value = "sum", reverseOrder = true)
+    public int seniority() {
+        return 2 * this.level;
+    }
+
+    @Combination("standard")
+    public void before_shift() {
+        Worker.events++;
+    }
+
+    @Combination("standard")
+    public boolean conditional_pay() {
+        return (Worker.events & 1) == 0;
+    }
+
+    @Combination("standard")
+    public int default_pay() {
+        return 50 * this.level;
+    }
+}
+
+class SeniorEngineer extends Engineer implements Overtime {
+    @Combination("sum")
+    public int hours() {
+        return 20 * this.level;
+    }
+
+    @Combination("collect")
+    public int[] skills() {
+        return new int[] { 3 * this.level, 4 * this.level };
+    }
+}
+
+class Manager extends Worker implements Overtime {
+    @Combination("and")
+    public boolean isReliable() {
+        return this.level > 5;
+    }
+
+    @Combination("standard")
+    public void before_shift() {
+        Worker.events++;
+    }
+}
+
+class Intern extends Worker {}
+
+// Hand-written equivalent of the combined methods above (the baseline of each benchmark)
+class ManualWorker {
+    int level = 1;
+
+    public boolean isHardWorker() {
+        return this.level > 3;
+    }
+
+    public boolean isReliable() {
+        return this.level > 0;
+    }
+
+    public int hours() {
+        return 10 * this.level;
+    }
+
+    public long factor() {
+        return 2L * this.level;
+    }
+
+    public int[] skills() {
+        return new int[] { this.level };
+    }
+
+    public int seniority() {
+        return this.level;
+    }
+
+    public int shift() {
+        return 8 * this.level;
+    }
+
+    public int pay() {
+        return 100 * this.level;
+    }
+
+    static int[] concat(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
+
+class ManualEngineer extends ManualWorker {
+    public boolean isHardWorker() {
+        return this.level > 4 || super.isHardWorker();
+    }
+
+    public boolean isReliable() {
+        return this.level < 10 && super.isReliable();
+    }
+
+    public int hours() {
+        return 12 * this.level + super.hours();
+    }
+
+    public long factor() {
+        return 3L * this.level * super.factor();
+    }
+
+    public int[] skills() {
+        return concat(new int[] { 2 * this.level }, super.skills());
+    }
+
+    public int seniority() {
+        return super.seniority() + 2 * this.level;
+    }
+
+    public int shift() {
+        Worker.events++;
+        return super.shift();
+    }
+
+    public int pay() {
+        return (Worker.events & 1) == 0 ? super.pay() : 50 * this.level;
+    }
+}
+
+class ManualSeniorEngineer extends ManualEngineer {
+    public boolean isHardWorker() {
+        return Worker.overtime > 0 || super.isHardWorker();
+    }
+
+    public int hours() {
+        return 20 * this.level + Worker.overtime + super.hours();
+    }
+
+    public int[] skills() {
+        return concat(new int[] { 3 * this.level, 4 * this.level }, super.skills());
+    }
+
+    public int shift() {
+        int result = super.shift();
+        Worker.events++;
+        return result;
+    }
+}
+
+class ManualManager extends ManualWorker {
+    public boolean isHardWorker() {
+        return Worker.overtime > 0 || super.isHardWorker();
+    }
+
+    public boolean isReliable() {
+        return this.level > 5 && super.isReliable();
+    }
+
+    public int hours() {
+        return Worker.overtime + super.hours();
+    }
+
+    public int shift() {
+        Worker.events++;
+        int result = super.shift();
+        Worker.events++;
+        return result;
+    }
+}
+
+class ManualIntern extends ManualWorker {}
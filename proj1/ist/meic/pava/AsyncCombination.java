@@ -0,0 +1,79 @@
+package ist.meic.pava;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+// Runtime support for asynchronous combinations (@extension_11): methods returning a CompletableFuture are combined by
+// composing their futures, so the calling thread never waits for any of the combined methods
+public final class AsyncCombination {
+    private AsyncCombination() {}
+
+    // Combination of the 'or', 'and', 'sum', 'prod' and 'collect' types
+    public static CompletableFuture<Object> simple(Contributors contributors, Object receiver, Object[] args, String operation) {
+        if (operation.equals("or") || operation.equals("and"))
+            return shortCircuit(contributors, receiver, args, operation.equals("or"));
+
+        // every method is started right away and the results are reduced as they complete
+        CompletableFuture<Object> result = invoke(contributors, 0, receiver, args);
+        for (int i = 1; i < contributors.size(); i++)
+            result = result.thenCombine(invoke(contributors, i, receiver, args), (a, b) -> reduce(operation, a, b));
+
+        return result;
+    }
+
+    // The next method is only called (when the previous future completes) if the result is still undecided
+    static CompletableFuture<Object> shortCircuit(Contributors contributors, Object receiver, Object[] args, boolean decisive) {
+        CompletableFuture<Object> result = invoke(contributors, 0, receiver, args);
+        for (int i = 1; i < contributors.size(); i++) {
+            int index = i;
+            result = result.thenCompose(value -> (Boolean)value == decisive ? CompletableFuture.completedFuture(value) : invoke(contributors, index, receiver, args));
+        }
+
+        return result;
+    }
+
+    // Before methods -> primary method (or conditional ? primary : default) -> after methods, each one waiting for the previous
+    public static CompletableFuture<Object> standard(Contributors befores, Contributors primaries, Contributors afters, Object receiver, Object[] args) {
+        CompletableFuture<Object> result = sequence(befores, receiver, args, CompletableFuture.completedFuture(null));
+
+        CompletableFuture<Object> primary;
+        if (primaries.size() == 3) { // @extension_9
+            primary = result.thenCompose(v -> invoke(primaries, 0, receiver, args))
+                    .thenCompose(condition -> invoke(primaries, (Boolean)condition ? 1 : 2, receiver, args));
+        } else {
+            primary = result.thenCompose(v -> invoke(primaries, 0, receiver, args));
+        }
+
+        return primary.thenCompose(value -> sequence(afters, receiver, args, CompletableFuture.completedFuture(null)).thenApply(v -> value));
+    }
+
+    static CompletableFuture<Object> sequence(Contributors contributors, Object receiver, Object[] args, CompletableFuture<Object> previous) {
+        CompletableFuture<Object> result = previous;
+        for (int i = 0; i < contributors.size(); i++) {
+            int index = i;
+            result = result.thenCompose(v -> invoke(contributors, index, receiver, args));
+        }
+
+        return result;
+    }
+
+    // Calls a method and returns its result as a future (methods returning void or plain values complete immediately)
+    @SuppressWarnings("unchecked")
+    static CompletableFuture<Object> invoke(Contributors contributors, int index, Object receiver, Object[] args) {
+        try {
+            Object result = contributors.invoke(index, receiver, args);
+            if (result instanceof CompletionStage)
+                return ((CompletionStage<Object>)result).toCompletableFuture();
+            return CompletableFuture.completedFuture(result);
+        } catch (Throwable e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    static Object reduce(String operation, Object a, Object b) {
+        if (operation.equals("collect") && (a == null || b == null))
+            return a == null ? b : a;
+
+        return ParallelCombination.reduce(operation, a.getClass(), new Object[] { a, b });
+    }
+}
@@ -0,0 +1,72 @@
+package ist.meic.pava;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Calls (and sampled times) of each method of a combination, recorded by the combined methods woven with the
+// ist.meic.pava.callMetrics option, and kept in a single registry by the key of the combination (e.g. isHardWorker$$or)
+// and then by the method (e.g. test.Student.isHardWorker), so every class sharing a method also shares its metrics
+public final class CallMetrics {
+    // One call in every SAMPLING_RATE is timed
+    private static final int SAMPLING_RATE = 64;
+
+    private static final Map<String, Map<String, CallMetrics>> registry = new ConcurrentHashMap<String, Map<String, CallMetrics>>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(report())));
+    }
+
+    private LongAdder calls = new LongAdder();
+    private LongAdder sampledCalls = new LongAdder();
+    private LongAdder sampledTime = new LongAdder();
+    // not synchronized, as it only chooses which calls are timed
+    private int tick;
+
+    // Returns the metrics of the methods of a combination, in the order they are called
+    public static CallMetrics[] register(String key, String[] methodNames) {
+        Map<String, CallMetrics> methods = registry.computeIfAbsent(key, k -> new ConcurrentHashMap<String, CallMetrics>());
+        CallMetrics[] metrics = new CallMetrics[methodNames.length];
+        for (int i = 0; i < methodNames.length; i++)
+            metrics[i] = methods.computeIfAbsent(methodNames[i], m -> new CallMetrics());
+
+        return metrics;
+    }
+
+    // Counts a call and returns its start time (0 if it is not sampled)
+    public long start() {
+        this.calls.increment();
+        return ++this.tick % SAMPLING_RATE == 0 ? System.nanoTime() : 0L;
+    }
+
+    public void end(long start) {
+        if (start != 0L) {
+            this.sampledCalls.increment();
+            this.sampledTime.add(System.nanoTime() - start);
+        }
+    }
+
+    public long calls() {
+        return this.calls.sum();
+    }
+
+    // Average time of the sampled calls, in nanoseconds
+    public long averageTime() {
+        long sampledCalls = this.sampledCalls.sum();
+        return sampledCalls != 0 ? this.sampledTime.sum() / sampledCalls : 0;
+    }
+
+    public static Map<String, Map<String, CallMetrics>> registry() {
+        return registry;
+    }
+
+    public static String report() {
+        StringBuilder report = new StringBuilder("Combination call metrics:\n");
+        registry.forEach((key, methods) -> {
+            report.append("  " + key + "\n");
+            methods.forEach((method, metrics) -> report.append("    " + method + ": " + metrics.calls() + " calls, " + metrics.averageTime() + "ns\n"));
+        });
+
+        return report.toString();
+    }
+}
@@ -7,4 +7,11 @@ import java.lang.annotation.*;
 public @interface Combination {
     String value();
     boolean reverseOrder() default false;
+    boolean parallel() default false;
+    int parallelThreshold() default 2;
+    long timeout() default 0;
+    boolean cacheable() default false;
+    int cacheSize() default 1024;
+    long cacheTtl() default 0;
+    boolean reorderable() default false;
 }
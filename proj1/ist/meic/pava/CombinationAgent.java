@@ -0,0 +1,192 @@
+package ist.meic.pava;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.nio.file.Paths;
+import java.security.ProtectionDomain;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.LoaderClassPath;
+import javassist.bytecode.ClassFile;
+
+// Java agent alternative to UsingMethodCombinationExtended: the combinations are applied by a ClassFileTransformer,
+// so the program runs on its usual class loaders (usage: java -javaagent:combination-agent.jar[=cache=<dir>] <class>)
+public class CombinationAgent {
+    public static void premain(String args, Instrumentation instrumentation) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        WovenClassCache cache = options.containsKey("cache") ? new WovenClassCache(Paths.get(options.get("cache"))) : null;
+        instrumentation.addTransformer(new CombineTransformer(cache));
+    }
+
+    public static void agentmain(String args, Instrumentation instrumentation) throws IOException {
+        premain(args, instrumentation);
+    }
+
+    // Agent options are given as a comma separated list of key=value pairs
+    static Map<String, String> parseOptions(String args) {
+        Map<String, String> options = new HashMap<String, String>();
+        if (args == null || args.isEmpty())
+            return options;
+
+        for (String option : args.split(",")) {
+            String[] parts = option.split("=", 2);
+            options.put(parts[0].trim(), parts.length > 1 ? parts[1].trim() : "");
+        }
+
+        return options;
+    }
+}
+
+class CombineTransformer implements ClassFileTransformer {
+    private static final String[] IGNORED_PACKAGES = { "java/", "javax/", "jdk/", "sun/", "com/sun/", "javassist/", "ist/meic/pava/" };
+
+    // Cache of previously woven classes (null if disabled)
+    private WovenClassCache cache;
+
+    // One class pool (and translator) per class loader, as each one has its own view of the classes
+    private Map<ClassLoader, WeavingContext> contexts = new WeakHashMap<ClassLoader, WeavingContext>();
+
+    // Classes (by loader) known to mention (or not) the Combination annotation in their hierarchy
+    private Map<ClassLoader, Map<String, Boolean>> mentionsCombination = new WeakHashMap<ClassLoader, Map<String, Boolean>>();
+
+    public CombineTransformer(WovenClassCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (loader == null || className == null || classBeingRedefined != null || isIgnored(className))
+            return null;
+
+        try {
+            if (!needsCombination(loader, readClassFile(classfileBuffer))) {
+                if (CombineTranslator.METRICS != null)
+                    CombineTranslator.METRICS.classSkipped();
+                return null;
+            }
+
+            // the cache only saves work, so its failures (e.g. a full disk or a corrupt entry) never keep the class from being woven
+            String key = null;
+            if (this.cache != null) {
+                try {
+                    key = this.cache.key(loader, classfileBuffer);
+                    byte[] woven = this.cache.get(key);
+                    if (woven != null)
+                        return woven;
+                } catch (Exception e) {
+                    System.err.println("Error: Could not read the woven class of [" + className + "] from the cache (" + e + ")");
+                    key = null;
+                }
+            }
+
+            WeavingContext context = getContext(loader);
+            byte[] woven;
+            synchronized (context) {
+                woven = context.weave(className.replace('/', '.'), classfileBuffer);
+            }
+
+            if (key != null) {
+                try {
+                    this.cache.put(key, woven);
+                } catch (Exception e) {
+                    System.err.println("Error: Could not store the woven class of [" + className + "] in the cache (" + e + ")");
+                }
+            }
+            return woven;
+        } catch (Throwable e) {
+            // exceptions thrown by a transformer are silently ignored by the JVM
+            System.err.println("Error: Could not combine the methods of [" + className + "]");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // A class needs to be combined if the annotation is used by the class itself or by any of its supertypes
+    boolean needsCombination(ClassLoader loader, ClassFile classFile) throws IOException {
+        // only the constant pool is checked (no CtClass is built)
+        if (CombineTranslator.usesCombination(classFile.getConstPool()))
+            return true;
+
+        if (classFile.getSuperclass() != null && mentionsCombination(loader, classFile.getSuperclass()))
+            return true;
+        for (String ctInterface : classFile.getInterfaces())
+            if (mentionsCombination(loader, ctInterface))
+                return true;
+
+        return false;
+    }
+
+    boolean mentionsCombination(ClassLoader loader, String className) throws IOException {
+        if (isIgnored(className.replace('.', '/')))
+            return false;
+
+        Map<String, Boolean> known = getMentionsCombination(loader);
+        Boolean mentions = known.get(className);
+        if (mentions == null) {
+            try (InputStream in = loader.getResourceAsStream(className.replace('.', '/') + ".class")) {
+                mentions = in != null && needsCombination(loader, readClassFile(in.readAllBytes()));
+            }
+            known.put(className, mentions);
+        }
+
+        return mentions;
+    }
+
+    boolean isIgnored(String className) {
+        for (String ignoredPackage : IGNORED_PACKAGES)
+            if (className.startsWith(ignoredPackage))
+                return true;
+
+        return false;
+    }
+
+    ClassFile readClassFile(byte[] bytecode) throws IOException {
+        return new ClassFile(new DataInputStream(new ByteArrayInputStream(bytecode)));
+    }
+
+    synchronized WeavingContext getContext(ClassLoader loader) throws Exception {
+        WeavingContext context = this.contexts.get(loader);
+        if (context == null) {
+            context = new WeavingContext(loader);
+            this.contexts.put(loader, context);
+        }
+
+        return context;
+    }
+
+    synchronized Map<String, Boolean> getMentionsCombination(ClassLoader loader) {
+        return this.mentionsCombination.computeIfAbsent(loader, l -> new ConcurrentHashMap<String, Boolean>());
+    }
+
+    // Stores the class pool and translator used to combine the classes of a given class loader
+    static class WeavingContext {
+        private ClassPool pool;
+        private CombineTranslator translator;
+
+        WeavingContext(ClassLoader loader) throws Exception {
+            this.pool = new ClassPool(true);
+            this.pool.appendClassPath(new LoaderClassPath(loader));
+            this.translator = new CombineTranslator();
+            this.translator.start(this.pool);
+        }
+
+        byte[] weave(String className, byte[] bytecode) throws Exception {
+            CtClass ctClass = this.pool.makeClass(new ByteArrayInputStream(bytecode));
+            this.translator.onLoad(this.pool, className);
+            byte[] woven = ctClass.toBytecode();
+
+            // the next classes must be combined against the original (not woven) version of this class
+            ctClass.detach();
+            return woven;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package ist.meic.pava;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Bootstrap of the combined methods woven with the ist.meic.pava.indy option: each combined method is a single invokedynamic
+// whose call site is linked (once) to a chain of method handles with the effective method (see CombinationHandles)
+// The call sites are mutable, so the combinations of a class can be relinked at runtime (e.g. after its methods are redefined)
+// With the ist.meic.pava.lazy option, the combined methods are stubs whose effective method is only computed (by Combinations)
+// when they are first called
+public final class CombinationBootstrap {
+    // Call sites linked for the combined methods of each class
+    private static final ClassValue<List<LinkedCombination>> linkedCombinations = new ClassValue<List<LinkedCombination>>() {
+        @Override
+        protected List<LinkedCombination> computeValue(Class<?> type) {
+            return new CopyOnWriteArrayList<LinkedCombination>();
+        }
+    };
+
+    private CombinationBootstrap() {}
+
+    // The type of the call site is the type of the combined method with the receiver as the first parameter
+    // Standard combinations list their methods as "<qualifier>:<name>" (the qualifier is empty for the primary method)
+    // and lazy combinations ("lazy" operation) list none, as their methods are found from the annotations
+    // Reorderable combinations ("reorderable:<operation>") are relinked as their methods are profiled (see ReorderableCombination)
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type, String operation, String... methodNames) {
+        LinkedCombination combination = new LinkedCombination(lookup, name, type, operation, methodNames);
+        combination.link();
+        linkedCombinations.get(lookup.lookupClass()).add(combination);
+        return combination.callSite;
+    }
+
+    // Rebuilds the effective methods of all the combinations of a class
+    public static void relink(Class<?> type) {
+        Combinations.invalidate(type);
+        List<LinkedCombination> combinations = linkedCombinations.get(type);
+        if (combinations.isEmpty())
+            return;
+
+        MutableCallSite[] callSites = new MutableCallSite[combinations.size()];
+        for (int i = 0; i < callSites.length; i++) {
+            combinations.get(i).link();
+            callSites[i] = combinations.get(i).callSite;
+        }
+
+        MutableCallSite.syncAll(callSites);
+    }
+
+    static class LinkedCombination {
+        private MethodHandles.Lookup lookup;
+        private String name;
+        private MethodType type;
+        private String operation;
+        private String[] methodNames;
+        private MutableCallSite callSite;
+
+        LinkedCombination(MethodHandles.Lookup lookup, String name, MethodType type, String operation, String[] methodNames) {
+            this.lookup = lookup;
+            this.name = name;
+            this.type = type;
+            this.operation = operation;
+            this.methodNames = methodNames;
+            this.callSite = new MutableCallSite(type);
+        }
+
+        void link() {
+            if (this.operation.equals("lazy"))
+                this.callSite.setTarget(linkLazy());
+            else if (this.operation.startsWith("reorderable:"))
+                new ReorderableCombination(this.callSite, this.operation.split(":", 2)[1], linkAll(), this.type).profile();
+            else
+                this.callSite.setTarget(this.operation.equals("standard") ? linkStandard() : CombinationHandles.simple(this.operation, linkAll(), this.type));
+        }
+
+        MethodHandle linkLazy() {
+            MethodType methodType = this.type.dropParameterTypes(0, 1);
+            return Combinations.handle(this.lookup.lookupClass(), this.name, methodType.parameterArray()).asType(this.type);
+        }
+
+        List<MethodHandle> linkAll() {
+            List<MethodHandle> methods = new ArrayList<MethodHandle>();
+            for (String methodName : this.methodNames)
+                methods.add(findMethod(methodName));
+
+            return methods;
+        }
+
+        MethodHandle linkStandard() {
+            List<MethodHandle> befores = new ArrayList<MethodHandle>();
+            List<MethodHandle> afters = new ArrayList<MethodHandle>();
+            MethodHandle primary = null;
+            MethodHandle conditional = null;
+            MethodHandle defaultNext = null;
+
+            for (String qualifiedName : this.methodNames) {
+                String[] parts = qualifiedName.split(":", 2);
+                MethodHandle method = findMethod(parts[1]);
+                switch (parts[0]) {
+                case "before":
+                    befores.add(MethodHandles.dropReturn(method));
+                    break;
+                case "after":
+                    afters.add(MethodHandles.dropReturn(method));
+                    break;
+                case "conditional":
+                    conditional = method;
+                    break;
+                case "default":
+                    defaultNext = method;
+                    break;
+                default:
+                    primary = method;
+                }
+            }
+
+            return CombinationHandles.standard(befores, primary, conditional, defaultNext, afters, this.type);
+        }
+
+        // Finds a method (of the class or of its supertypes) with the parameters of the combined method
+        // Its return type is only adapted for the primary ones, the hooks (e.g. before and after methods) may have any other
+        MethodHandle findMethod(String name) {
+            Class<?> ownerClass = this.lookup.lookupClass();
+            MethodType methodType = this.type.dropParameterTypes(0, 1);
+            Method method = Contributors.findMethod(ownerClass, name, methodType.parameterArray());
+            if (method == null)
+                throw new RuntimeException("Error: Could not find the combined method [" + ownerClass.getName() + "." + name + "]");
+
+            try {
+                MethodHandle handle = this.lookup.unreflect(method);
+                return handle.asType(handle.type().changeParameterType(0, this.type.parameterType(0)));
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Error: Could not access the combined method [" + ownerClass.getName() + "." + name + "]", e);
+            }
+        }
+    }
+}
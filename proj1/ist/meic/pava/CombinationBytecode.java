@@ -0,0 +1,489 @@
+package ist.meic.pava;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.CtPrimitiveType;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.ExceptionTable;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import javassist.bytecode.analysis.Analyzer;
+import javassist.bytecode.analysis.Frame;
+
+// Builds the body of a combined method straight as bytecode (instead of compiling its source), with its stack map rebuilt afterwards
+// Every method is called on the receiver with the arguments of the combined method, as a source body would with name($$)
+// (the private ones must be declared by the class itself, as the copies of the private methods of its superclasses are)
+final class CombinationBytecode {
+    private final CtClass ctClass;
+    private final CtMethod ctMethod;
+    private final CtClass[] parameters;
+    private final Bytecode bytecode;
+    private int locals;
+
+    // Local variables used by the inlined methods (each one reuses the ones after the locals of the combined method)
+    private int maxLocals;
+
+    // Offsets of the branches to patch with the position of each label
+    private List<List<Integer>> branches = new ArrayList<List<Integer>>();
+
+    CombinationBytecode(CtClass ctClass, CtMethod ctMethod) throws NotFoundException {
+        this.ctClass = ctClass;
+        this.ctMethod = ctMethod;
+        this.parameters = ctMethod.getParameterTypes();
+        this.bytecode = new Bytecode(ctClass.getClassFile().getConstPool());
+        this.locals = Descriptor.paramSize(ctMethod.getSignature()) + 1;
+    }
+
+    // or, and, sum and prod combination: the terms are the methods to call or the constants folded in their place
+    static CombinationBytecode simple(CtClass ctClass, CtMethod ctMethod, String operation, List<Object> terms) throws NotFoundException {
+        CombinationBytecode code = new CombinationBytecode(ctClass, ctMethod);
+        CtClass returnType = ctMethod.getReturnType();
+        if (operation.equals("or") || operation.equals("and")) {
+            boolean decisive = operation.equals("or");
+            boolean folded = false;
+            int decided = code.newLabel();
+            for (Object term : terms) {
+                // a folded constant always ends the combination
+                if (term instanceof Boolean) {
+                    code.bytecode.addIconst((Boolean)term ? 1 : 0);
+                    folded = true;
+                    break;
+                }
+
+                code.addCall((CtMethod)term);
+                code.addBranch(decisive ? Opcode.IFNE : Opcode.IFEQ, decided);
+            }
+
+            if (!folded)
+                code.bytecode.addIconst(decisive ? 0 : 1);
+            code.bytecode.addReturn(returnType);
+            if (code.hasBranches(decided)) {
+                code.setLabel(decided);
+                code.bytecode.addIconst(decisive ? 1 : 0);
+                code.bytecode.addReturn(returnType);
+            }
+
+            return code;
+        }
+
+        int opcode = getArithmeticOpcode(operation, returnType);
+        for (int i = 0; i < terms.size(); i++) {
+            Object term = terms.get(i);
+            if (term instanceof Long)
+                code.bytecode.addLconst((Long)term);
+            else if (term instanceof Integer)
+                code.bytecode.addIconst((Integer)term);
+            else
+                code.addCall((CtMethod)term);
+
+            if (i > 0)
+                code.bytecode.addOpcode(opcode);
+        }
+
+        code.bytecode.addReturn(returnType);
+        return code;
+    }
+
+    // Standard combination: before methods, primary (or conditional ? primary : default) method and after methods
+    static CombinationBytecode standard(CtClass ctClass, CtMethod ctMethod, List<CtMethod> beforeMethods, CtMethod primaryMethod, CtMethod conditionalMethod,
+            CtMethod defaultMethod, List<CtMethod> afterMethods) throws NotFoundException {
+
+        CombinationBytecode code = new CombinationBytecode(ctClass, ctMethod);
+        CtClass returnType = ctMethod.getReturnType();
+        for (CtMethod method : beforeMethods)
+            code.addPop(code.addCall(method));
+
+        if (conditionalMethod != null) { // @extension_9
+            int defaultNext = code.newLabel();
+            int end = code.newLabel();
+            code.addCall(conditionalMethod);
+            code.addBranch(Opcode.IFEQ, defaultNext);
+            code.addResult(code.addCall(primaryMethod), returnType);
+            code.addBranch(Opcode.GOTO, end);
+            code.setLabel(defaultNext);
+            code.addResult(code.addCall(defaultMethod), returnType);
+            code.setLabel(end);
+        } else {
+            code.addResult(code.addCall(primaryMethod), returnType);
+        }
+
+        // the result is kept in a local variable while the after methods are called
+        int result = code.locals;
+        if (returnType != CtClass.voidType)
+            code.locals += code.bytecode.addStore(result, returnType);
+        for (CtMethod method : afterMethods)
+            code.addPop(code.addCall(method));
+        if (returnType != CtClass.voidType)
+            code.bytecode.addLoad(result, returnType);
+
+        code.bytecode.addReturn(returnType);
+        return code;
+    }
+
+    // Collect combination: each method is called only once and its result is copied straight to an array of the exact total length
+    static CombinationBytecode collect(CtClass ctClass, CtMethod ctMethod, List<Object> methods) throws NotFoundException {
+        CombinationBytecode code = new CombinationBytecode(ctClass, ctMethod);
+        Bytecode bytecode = code.bytecode;
+        CtClass arrayType = ctMethod.getReturnType();
+        int parts = code.locals;
+        int length = parts + methods.size();
+        int result = length + 1;
+        int position = result + 1;
+        code.locals = position + 1;
+
+        for (int i = 0; i < methods.size(); i++) {
+            code.addCall((CtMethod)methods.get(i));
+            bytecode.addAstore(parts + i);
+        }
+
+        bytecode.addIconst(0);
+        bytecode.addIstore(length);
+        for (int i = 0; i < methods.size(); i++) {
+            int skip = code.newLabel();
+            bytecode.addAload(parts + i);
+            code.addBranch(Opcode.IFNULL, skip);
+            bytecode.addIload(length);
+            bytecode.addAload(parts + i);
+            bytecode.addOpcode(Opcode.ARRAYLENGTH);
+            bytecode.addOpcode(Opcode.IADD);
+            bytecode.addIstore(length);
+            code.setLabel(skip);
+        }
+
+        CtClass componentType = arrayType.getComponentType();
+        bytecode.addIload(length);
+        if (componentType.isPrimitive()) {
+            bytecode.addOpcode(Opcode.NEWARRAY);
+            bytecode.add(((CtPrimitiveType)componentType).getArrayType());
+        } else {
+            bytecode.addOpcode(Opcode.ANEWARRAY);
+            bytecode.addIndex(bytecode.getConstPool().addClassInfo(componentType));
+        }
+        bytecode.addAstore(result);
+
+        bytecode.addIconst(0);
+        bytecode.addIstore(position);
+        for (int i = 0; i < methods.size(); i++) {
+            int skip = code.newLabel();
+            bytecode.addAload(parts + i);
+            code.addBranch(Opcode.IFNULL, skip);
+            bytecode.addAload(parts + i);
+            bytecode.addIconst(0);
+            bytecode.addAload(result);
+            bytecode.addIload(position);
+            bytecode.addAload(parts + i);
+            bytecode.addOpcode(Opcode.ARRAYLENGTH);
+            bytecode.addInvokestatic("java.lang.System", "arraycopy", "(Ljava/lang/Object;ILjava/lang/Object;II)V");
+            bytecode.addIload(position);
+            bytecode.addAload(parts + i);
+            bytecode.addOpcode(Opcode.ARRAYLENGTH);
+            bytecode.addOpcode(Opcode.IADD);
+            bytecode.addIstore(position);
+            code.setLabel(skip);
+        }
+
+        bytecode.addAload(result);
+        bytecode.addOpcode(Opcode.ARETURN);
+        return code;
+    }
+
+    // The bodies of the combined methods are set as they are built, unless they are huge (see isHuge), and then some of their terms are
+    // combined by helper methods instead
+    static void setSimpleBody(CtClass ctClass, CtMethod ctMethod, String operation, List<Object> terms) throws NotFoundException, CannotCompileException {
+        CombinationBytecode code = simple(ctClass, ctMethod, operation, terms);
+        if (code.isHuge(terms)) {
+            Helper helper = (h, part) -> setSimpleBody(ctClass, h, operation, part);
+            CtClass returnType = ctMethod.getReturnType();
+            if (returnType == CtClass.floatType || returnType == CtClass.doubleType) {
+                // floating-point values are still summed (or multiplied) from left to right, so only the first terms go to a helper
+                int termSize = Math.max(1, code.bytecode.currentPc() / terms.size());
+                int first = Math.max(2, terms.size() - Math.max(1, CombineTranslator.SPLIT_SIZE / termSize - 1));
+                List<Object> split = new ArrayList<Object>(terms.subList(first, terms.size()));
+                split.add(0, addHelper(ctClass, ctMethod, returnType, 0, terms.subList(0, first), helper));
+                terms = split;
+            } else {
+                terms = split(ctClass, ctMethod, returnType, terms, helper);
+            }
+            code = simple(ctClass, ctMethod, operation, terms);
+        }
+
+        code.setBody();
+    }
+
+    static void setStandardBody(CtClass ctClass, CtMethod ctMethod, List<CtMethod> beforeMethods, CtMethod primaryMethod, CtMethod conditionalMethod,
+            CtMethod defaultMethod, List<CtMethod> afterMethods) throws NotFoundException, CannotCompileException {
+
+        CombinationBytecode code = standard(ctClass, ctMethod, beforeMethods, primaryMethod, conditionalMethod, defaultMethod, afterMethods);
+        List<Object> methods = new ArrayList<Object>(beforeMethods);
+        methods.addAll(afterMethods);
+        if (code.isHuge(methods)) {
+            // the before and the after methods are called by (a tree of) helpers
+            Helper helper = (h, part) -> setSequenceBody(ctClass, h, part);
+            if (beforeMethods.size() > 1)
+                beforeMethods = Arrays.asList(addHelper(ctClass, ctMethod, CtClass.voidType, 0, new ArrayList<Object>(beforeMethods), helper));
+            if (afterMethods.size() > 1)
+                afterMethods = Arrays.asList(addHelper(ctClass, ctMethod, CtClass.voidType, 1, new ArrayList<Object>(afterMethods), helper));
+            code = standard(ctClass, ctMethod, beforeMethods, primaryMethod, conditionalMethod, defaultMethod, afterMethods);
+        }
+
+        code.setBody();
+    }
+
+    static void setCollectBody(CtClass ctClass, CtMethod ctMethod, List<Object> methods) throws NotFoundException, CannotCompileException {
+        CombinationBytecode code = collect(ctClass, ctMethod, methods);
+        if (code.isHuge(methods))
+            code = collect(ctClass, ctMethod, split(ctClass, ctMethod, ctMethod.getReturnType(), methods, (h, part) -> setCollectBody(ctClass, h, part)));
+
+        code.setBody();
+    }
+
+    // Calls the methods in order, ignoring their results (the before or the after methods of a huge standard combination)
+    static void setSequenceBody(CtClass ctClass, CtMethod ctMethod, List<Object> methods) throws NotFoundException, CannotCompileException {
+        CombinationBytecode code = sequence(ctClass, ctMethod, methods);
+        if (code.isHuge(methods))
+            code = sequence(ctClass, ctMethod, split(ctClass, ctMethod, CtClass.voidType, methods, (h, part) -> setSequenceBody(ctClass, h, part)));
+
+        code.setBody();
+    }
+
+    static CombinationBytecode sequence(CtClass ctClass, CtMethod ctMethod, List<Object> methods) throws NotFoundException {
+        CombinationBytecode code = new CombinationBytecode(ctClass, ctMethod);
+        for (Object method : methods)
+            code.addPop(code.addCall((CtMethod)method));
+        code.bytecode.addOpcode(Opcode.RETURN);
+        return code;
+    }
+
+    // Sets the body of a helper method, given the terms it combines
+    interface Helper {
+        void setBody(CtMethod helper, List<Object> terms) throws NotFoundException, CannotCompileException;
+    }
+
+    // HotSpot does not compile methods bigger than 8000 bytes (HugeMethodLimit), so the bigger combinations (of more than two terms) are split
+    // Helper methods are private, so the combined methods of interfaces are never split
+    boolean isHuge(List<Object> terms) {
+        return CombineTranslator.SPLIT_SIZE > 0 && this.bytecode.currentPc() > CombineTranslator.SPLIT_SIZE && terms.size() > 2 && !this.ctClass.isInterface();
+    }
+
+    // Splits the terms of a combination in two halves, each one combined by a helper method (or kept as it is, if alone), so the terms are
+    // still evaluated in the same order (and the or and and combinations still stop at the first decisive term)
+    static List<Object> split(CtClass ctClass, CtMethod ctMethod, CtClass returnType, List<Object> terms, Helper helper)
+            throws NotFoundException, CannotCompileException {
+
+        List<Object> halves = new ArrayList<Object>();
+        halves.add(terms.size() / 2 == 1 ? terms.get(0) : addHelper(ctClass, ctMethod, returnType, 0, terms.subList(0, terms.size() / 2), helper));
+        halves.add(addHelper(ctClass, ctMethod, returnType, 1, terms.subList(terms.size() / 2, terms.size()), helper));
+        return halves;
+    }
+
+    // Adds a private method with the parameters of the combined method (e.g. print_name$split$1) that combines the given terms
+    // The helpers of a helper are named after it (print_name$split$1$0), so only the first ones may clash (with those of an overloaded method)
+    static CtMethod addHelper(CtClass ctClass, CtMethod ctMethod, CtClass returnType, int index, List<Object> terms, Helper helper)
+            throws NotFoundException, CannotCompileException {
+
+        String prefix = ctMethod.getName() + "$";
+        if (!ctMethod.getName().contains("$split")) {
+            prefix = ctMethod.getName() + "$split";
+            while (hasMethod(ctClass, prefix + "$" + index))
+                prefix += "_";
+            prefix += "$";
+        }
+
+        CtMethod method = new CtMethod(returnType, prefix + index, ctMethod.getParameterTypes(), ctClass);
+        method.setModifiers(Modifier.PRIVATE);
+        method.setExceptionTypes(ctMethod.getExceptionTypes());
+        helper.setBody(method, terms);
+        ctClass.addMethod(method);
+        return method;
+    }
+
+    static boolean hasMethod(CtClass ctClass, String name) {
+        try {
+            ctClass.getDeclaredMethod(name);
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    static int getArithmeticOpcode(String operation, CtClass type) {
+        boolean sum = operation.equals("sum");
+        if (type == CtClass.longType)
+            return sum ? Opcode.LADD : Opcode.LMUL;
+        else if (type == CtClass.floatType)
+            return sum ? Opcode.FADD : Opcode.FMUL;
+        else if (type == CtClass.doubleType)
+            return sum ? Opcode.DADD : Opcode.DMUL;
+        else if (type.isPrimitive() && type != CtClass.booleanType && type != CtClass.voidType)
+            return sum ? Opcode.IADD : Opcode.IMUL;
+
+        throw new RuntimeException("Error: Cannot " + operation + " values of type [" + type.getName() + "]");
+    }
+
+    // Calls a method (of the class or of its supertypes) on the receiver with all the arguments and returns its return type
+    CtClass addCall(CtMethod method) throws NotFoundException {
+        if (CombineTranslator.INLINE > 0 && addInlined(method))
+            return method.getReturnType();
+
+        String descriptor = method.getMethodInfo2().getDescriptor();
+        this.bytecode.addAload(0);
+        this.bytecode.addLoadParameters(this.parameters, 1);
+        if (Modifier.isPrivate(method.getModifiers()))
+            this.bytecode.addInvokespecial(this.ctClass.isInterface(), this.bytecode.getConstPool().addClassInfo(this.ctClass), method.getName(), descriptor);
+        else if (this.ctClass.isInterface())
+            this.bytecode.addInvokeinterface(this.ctClass, method.getName(), descriptor, Descriptor.paramSize(descriptor) + 1);
+        else
+            this.bytecode.addInvokevirtual(this.ctClass, method.getName(), descriptor);
+
+        return method.getReturnType();
+    }
+
+    // Copies the code of a small method of the class in place of its call (ist.meic.pava.inline), with its own local variables moved
+    // after the ones of the combined method and its returns replaced by jumps to its end, where the result is left on the stack
+    // Returns false if the method cannot be inlined (it is too big or it writes its parameters, handles exceptions or has switches)
+    boolean addInlined(CtMethod method) throws NotFoundException {
+        MethodInfo methodInfo = method.getMethodInfo2();
+        CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
+        if (codeAttribute == null || method.getDeclaringClass() != this.ctClass || codeAttribute.getCodeLength() > CombineTranslator.INLINE
+                || codeAttribute.getExceptionTable().size() > 0 || Modifier.isSynchronized(method.getModifiers()))
+            return false;
+
+        int parameterSlots = Descriptor.paramSize(methodInfo.getDescriptor()) + 1;
+        try {
+            Frame[] frames = new Analyzer().analyze(method);
+            int returnSize = method.getReturnType() == CtClass.voidType ? 0 : Descriptor.dataSize(Descriptor.of(method.getReturnType()));
+            CodeIterator iterator = codeAttribute.iterator();
+            while (iterator.hasNext()) {
+                int index = iterator.next();
+                int opcode = iterator.byteAt(index);
+                if (opcode == Opcode.TABLESWITCH || opcode == Opcode.LOOKUPSWITCH || opcode == Opcode.JSR || opcode == Opcode.JSR_W || opcode == Opcode.RET)
+                    return false;
+                // the returns must leave just the result on the stack, as it is kept when jumping to the end
+                if (isReturn(opcode) && (frames[index] == null || frames[index].getTopIndex() + 1 != returnSize))
+                    return false;
+                if (getStoredLocal(iterator, index) >= 0 && getStoredLocal(iterator, index) < parameterSlots)
+                    return false;
+            }
+
+            CodeAttribute inlined = new CodeAttribute(codeAttribute.getConstPool(), codeAttribute.getMaxStack(), codeAttribute.getMaxLocals(),
+                    codeAttribute.getCode().clone(), new ExceptionTable(codeAttribute.getConstPool()));
+            int shift = this.locals - parameterSlots;
+            if (shift > 0)
+                inlined.insertLocalVar(parameterSlots, shift);
+
+            // each return becomes a goto to the end (the last one is simply dropped)
+            iterator = inlined.iterator();
+            while (iterator.hasNext()) {
+                int index = iterator.next();
+                if (isReturn(iterator.byteAt(index)) && iterator.hasNext())
+                    iterator.insertGapAt(index, 2, false);
+            }
+
+            int length = iterator.getCodeLength();
+            iterator.begin();
+            while (iterator.hasNext()) {
+                int index = iterator.next();
+                if (!isReturn(iterator.byteAt(index)))
+                    continue;
+
+                iterator.writeByte(Opcode.NOP, index);
+                if (index > 1 && iterator.hasNext()) {
+                    iterator.writeByte(Opcode.GOTO, index - 2);
+                    iterator.write16bit(length - (index - 2), index - 1);
+                }
+            }
+
+            byte[] code = inlined.getCode();
+            for (int i = 0; i < length; i++)
+                this.bytecode.add(code[i]);
+            this.bytecode.growStack(returnSize);
+            this.maxLocals = Math.max(this.maxLocals, codeAttribute.getMaxLocals() + shift);
+            return true;
+        } catch (BadBytecode e) {
+            return false;
+        }
+    }
+
+    static boolean isReturn(int opcode) {
+        return opcode >= Opcode.IRETURN && opcode <= Opcode.RETURN;
+    }
+
+    // Returns the local variable written by an instruction (-1 if none)
+    static int getStoredLocal(CodeIterator iterator, int index) {
+        int opcode = iterator.byteAt(index);
+        if (opcode == Opcode.WIDE) {
+            opcode = iterator.byteAt(index + 1);
+            return (opcode >= Opcode.ISTORE && opcode <= Opcode.ASTORE) || opcode == Opcode.IINC ? iterator.u16bitAt(index + 2) : -1;
+        } else if ((opcode >= Opcode.ISTORE && opcode <= Opcode.ASTORE) || opcode == Opcode.IINC) {
+            return iterator.byteAt(index + 1);
+        } else if (opcode >= Opcode.ISTORE_0 && opcode <= Opcode.ASTORE_3) {
+            return (opcode - Opcode.ISTORE_0) % 4;
+        }
+
+        return -1;
+    }
+
+    // Discards a value of the given type (if any)
+    void addPop(CtClass type) {
+        if (type == CtClass.longType || type == CtClass.doubleType)
+            this.bytecode.addOpcode(Opcode.POP2);
+        else if (type != CtClass.voidType)
+            this.bytecode.addOpcode(Opcode.POP);
+    }
+
+    // Keeps the value of the primary method as the result, unless the combined method returns void (@extension_5)
+    void addResult(CtClass type, CtClass returnType) {
+        if (returnType == CtClass.voidType)
+            addPop(type);
+        else if (!type.equals(returnType) && !returnType.isPrimitive())
+            this.bytecode.addCheckcast(returnType);
+    }
+
+    int newLabel() {
+        this.branches.add(new ArrayList<Integer>());
+        return this.branches.size() - 1;
+    }
+
+    void addBranch(int opcode, int label) {
+        this.branches.get(label).add(this.bytecode.currentPc());
+        this.bytecode.addOpcode(opcode);
+        this.bytecode.addIndex(0);
+    }
+
+    boolean hasBranches(int label) {
+        return !this.branches.get(label).isEmpty();
+    }
+
+    // Places a label at the current position, patching the branches to it
+    void setLabel(int label) {
+        int position = this.bytecode.currentPc();
+        for (int branch : this.branches.get(label))
+            this.bytecode.write16bit(branch + 1, position - branch);
+    }
+
+    void setBody() throws CannotCompileException {
+        this.bytecode.setMaxLocals(Math.max(this.locals, this.maxLocals));
+        MethodInfo methodInfo = this.ctMethod.getMethodInfo();
+        try {
+            CodeAttribute codeAttribute = this.bytecode.toCodeAttribute();
+            codeAttribute.computeMaxStack();
+            methodInfo.setCodeAttribute(codeAttribute);
+            methodInfo.rebuildStackMapIf6(this.ctClass.getClassPool(), this.ctClass.getClassFile());
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+
+        this.ctMethod.setModifiers(this.ctMethod.getModifiers() & ~Modifier.ABSTRACT);
+    }
+}
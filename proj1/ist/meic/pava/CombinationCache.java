@@ -0,0 +1,137 @@
+package ist.meic.pava;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Results of a cacheable combination (@extension_12), by receiver (identity) and arguments
+// The cache is direct-mapped (each key has a single slot, so a new result replaces whichever was there) and its entries are immutable,
+// so it is bounded and can be used concurrently without locks. The entries may also expire after a given time
+public final class CombinationCache {
+    // Returned by get when there is no (valid) result
+    public static final Object MISS = new Object();
+
+    // Caches of the combinations of each class
+    private static final ClassValue<List<CombinationCache>> caches = new ClassValue<List<CombinationCache>>() {
+        @Override
+        protected List<CombinationCache> computeValue(Class<?> type) {
+            return new CopyOnWriteArrayList<CombinationCache>();
+        }
+    };
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+    private final long ttl;
+
+    private CombinationCache(int size, long ttl) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.entries = new AtomicReferenceArray<Entry>(capacity);
+        this.mask = capacity - 1;
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+    }
+
+    // Creates the cache of a combination of the class of the lookup (a ttl of 0 means the results never expire)
+    public static CombinationCache of(MethodHandles.Lookup lookup, int size, long ttl) {
+        CombinationCache cache = new CombinationCache(size, ttl);
+        caches.get(lookup.lookupClass()).add(cache);
+        return cache;
+    }
+
+    // Discards the results of all the combinations of a class
+    public static void invalidate(Class<?> type) {
+        for (CombinationCache cache : caches.get(type))
+            cache.clear();
+    }
+
+    // Discards the results of a receiver (e.g. after its state changes), in the combinations of its class and supertypes
+    public static void invalidate(Object receiver) {
+        invalidate(receiver, receiver.getClass());
+    }
+
+    static void invalidate(Object receiver, Class<?> type) {
+        for (CombinationCache cache : caches.get(type))
+            cache.remove(receiver);
+        for (Class<?> typeInterface : type.getInterfaces())
+            invalidate(receiver, typeInterface);
+        if (type.getSuperclass() != null)
+            invalidate(receiver, type.getSuperclass());
+    }
+
+    public Object get(Object receiver) {
+        return get(receiver, 0L, null);
+    }
+
+    public Object get(Object receiver, long argument) {
+        return get(receiver, argument, null);
+    }
+
+    public Object get(Object receiver, Object[] args) {
+        return get(receiver, 0L, args);
+    }
+
+    public void put(Object receiver, Object result) {
+        put(receiver, 0L, null, result);
+    }
+
+    public void put(Object receiver, long argument, Object result) {
+        put(receiver, argument, null, result);
+    }
+
+    public void put(Object receiver, Object[] args, Object result) {
+        put(receiver, 0L, args, result);
+    }
+
+    Object get(Object receiver, long argument, Object[] args) {
+        Entry entry = this.entries.get(index(receiver, argument, args));
+        if (entry == null || entry.receiver.get() != receiver || entry.argument != argument || !Arrays.equals(entry.args, args))
+            return MISS;
+        if (this.ttl > 0 && System.nanoTime() - entry.time > this.ttl)
+            return MISS;
+
+        return entry.result;
+    }
+
+    void put(Object receiver, long argument, Object[] args, Object result) {
+        long time = this.ttl > 0 ? System.nanoTime() : 0L;
+        this.entries.set(index(receiver, argument, args), new Entry(new WeakReference<Object>(receiver), argument, args, result, time));
+    }
+
+    void remove(Object receiver) {
+        for (int i = 0; i < this.entries.length(); i++) {
+            Entry entry = this.entries.get(i);
+            if (entry != null && entry.receiver.get() == receiver)
+                this.entries.compareAndSet(i, entry, null);
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < this.entries.length(); i++)
+            this.entries.set(i, null);
+    }
+
+    int index(Object receiver, long argument, Object[] args) {
+        int hash = System.identityHashCode(receiver) * 31 + Long.hashCode(argument) * 17 + Arrays.hashCode(args);
+        return (hash ^ (hash >>> 16)) & this.mask;
+    }
+
+    // The receiver is weakly referenced, so the cache does not keep it alive
+    static class Entry {
+        private final WeakReference<Object> receiver;
+        private final long argument;
+        private final Object[] args;
+        private final Object result;
+        private final long time;
+
+        Entry(WeakReference<Object> receiver, long argument, Object[] args, Object result, long time) {
+            this.receiver = receiver;
+            this.argument = argument;
+            this.args = args;
+            this.result = result;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package ist.meic.pava;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.util.List;
+
+// Builds the effective method of a combination as a chain of method handles
+// Every handle has the type of the combined method, with the receiver as the first parameter
+final class CombinationHandles {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private CombinationHandles() {}
+
+    // Combination of the 'or', 'and', 'sum', 'prod' and 'collect' types (the methods are evaluated in order)
+    static MethodHandle simple(String operation, List<MethodHandle> methods, MethodType type) {
+        switch (operation) {
+        case "or":
+            return shortCircuit(methods, type, true);
+        case "and":
+            return shortCircuit(methods, type, false);
+        case "sum":
+        case "prod":
+            MethodHandle reducer = reducer(operation, type.returnType());
+            MethodHandle combined = methods.get(0);
+            for (int i = 1; i < methods.size(); i++)
+                combined = reduce(reducer, combined, methods.get(i), type);
+            return combined;
+        case "collect":
+            return collect(methods, type);
+        default:
+            throw new RuntimeException("Error: Invalid combination value [" + operation + "]! Values: ['or', 'and', 'sum', 'prod' and 'collect']");
+        }
+    }
+
+    // a(args) || b(args) || ... (or the equivalent with && when the decisive value is false)
+    static MethodHandle shortCircuit(List<MethodHandle> methods, MethodType type, boolean decisive) {
+        MethodHandle decided = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, decisive), 0, type.parameterList());
+        MethodHandle combined = methods.get(methods.size() - 1);
+        for (int i = methods.size() - 2; i >= 0; i--)
+            combined = decisive ? MethodHandles.guardWithTest(methods.get(i), decided, combined) : MethodHandles.guardWithTest(methods.get(i), combined, decided);
+
+        return combined;
+    }
+
+    // (args) -> reducer(a(args), b(args)), with a evaluated before b
+    static MethodHandle reduce(MethodHandle reducer, MethodHandle a, MethodHandle b, MethodType type) {
+        MethodHandle combined = MethodHandles.dropArguments(reducer, 2, type.parameterList());
+        combined = MethodHandles.foldArguments(combined, 1, b);
+        return MethodHandles.foldArguments(combined, 0, a);
+    }
+
+    // (args) -> concat(a(args), b(args), ...): the arrays are stored in order and then copied once to a new array (null arrays are skipped),
+    // as in the woven collect combinations
+    static MethodHandle collect(List<MethodHandle> methods, MethodType type) {
+        try {
+            MethodHandle results = MethodHandles.insertArguments(MethodHandles.arrayConstructor(Object[].class), 0, methods.size());
+            results = MethodHandles.dropArguments(results, 0, type.parameterList());
+            for (int i = 0; i < methods.size(); i++) {
+                // (results, args) -> { results[i] = method(args); return results; }
+                MethodHandle store = MethodHandles.insertArguments(MethodHandles.arrayElementSetter(Object[].class), 1, i);
+                store = MethodHandles.collectArguments(store, 1, methods.get(i).asType(type.changeReturnType(Object.class)));
+                MethodHandle stored = MethodHandles.dropArguments(MethodHandles.identity(Object[].class), 1, type.parameterList());
+                results = MethodHandles.foldArguments(MethodHandles.foldArguments(stored, store), results);
+            }
+
+            MethodHandle concat = LOOKUP.findStatic(CombinationHandles.class, "concat", MethodType.methodType(Object.class, Class.class, Object[].class));
+            concat = MethodHandles.insertArguments(concat, 0, type.returnType().getComponentType());
+            return MethodHandles.filterReturnValue(results, concat.asType(MethodType.methodType(type.returnType(), Object[].class)));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Error: Cannot collect values of type [" + type.returnType().getName() + "]", e);
+        }
+    }
+
+    // Combination of the standard type: before methods, primary (or conditional ? primary : default) method and after methods
+    static MethodHandle standard(List<MethodHandle> befores, MethodHandle primary, MethodHandle conditional, MethodHandle defaultNext, List<MethodHandle> afters,
+            MethodType type) {
+
+        MethodHandle combined = conditional != null ? MethodHandles.guardWithTest(conditional, primary, defaultNext) : primary;
+        for (MethodHandle after : afters)
+            combined = andThen(combined, after, type);
+        for (int i = befores.size() - 1; i >= 0; i--)
+            combined = MethodHandles.foldArguments(combined, befores.get(i));
+
+        return combined;
+    }
+
+    // Calls the method and then the (void) next method, returning the result of the first one
+    static MethodHandle andThen(MethodHandle method, MethodHandle next, MethodType type) {
+        if (type.returnType() == void.class)
+            return MethodHandles.foldArguments(next, method);
+
+        MethodHandle result = MethodHandles.dropArguments(MethodHandles.identity(type.returnType()), 1, type.parameterList());
+        result = MethodHandles.foldArguments(result, 1, next);
+        return MethodHandles.foldArguments(result, 0, method);
+    }
+
+    // Binary operation of the combination, for the given result type
+    static MethodHandle reducer(String operation, Class<?> type) {
+        try {
+            Class<?> operandType = type == long.class || type == float.class || type == double.class ? type : int.class;
+            MethodHandle reducer = LOOKUP.findStatic(CombinationHandles.class, operation, MethodType.methodType(operandType, operandType, operandType));
+            return MethodHandles.explicitCastArguments(reducer, MethodType.methodType(type, type, type));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Error: Cannot " + operation + " values of type [" + type.getName() + "]", e);
+        }
+    }
+
+    static int sum(int a, int b) {
+        return a + b;
+    }
+
+    static long sum(long a, long b) {
+        return a + b;
+    }
+
+    static float sum(float a, float b) {
+        return a + b;
+    }
+
+    static double sum(double a, double b) {
+        return a + b;
+    }
+
+    static int prod(int a, int b) {
+        return a * b;
+    }
+
+    static long prod(long a, long b) {
+        return a * b;
+    }
+
+    static float prod(float a, float b) {
+        return a * b;
+    }
+
+    static double prod(double a, double b) {
+        return a * b;
+    }
+
+    // Copies the arrays to a single array of their summed length (null arrays are skipped), for the collect handles and the parallel collect combinations
+    static Object concat(Class<?> componentType, Object[] arrays) {
+        int length = 0;
+        for (Object array : arrays)
+            length += array != null ? Array.getLength(array) : 0;
+
+        Object result = Array.newInstance(componentType, length);
+        int position = 0;
+        for (Object array : arrays) {
+            if (array != null) {
+                System.arraycopy(array, 0, result, position, Array.getLength(array));
+                position += Array.getLength(array);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,353 @@
+package ist.meic.pava;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.stream.Stream;
+
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.annotation.Annotation;
+
+// Build-time index of the combination methods, written into a directory or jar of classes (META-INF/ist.meic.pava/combinations.idx)
+// For each type it lists its direct supertypes (its interfaces and then its superclass) and its combination methods (name, descriptor,
+// group key, qualifier and annotation values), so the CombineTranslator can tell which classes need to be combined, and with which methods,
+// without scanning the methods and annotations of the indexed types (usage: java -classpath javassist.jar:. ist.meic.pava.CombinationIndex <dir|jar>)
+// Each record also has the length and CRC-32 of the class file it was read from, so a class that changed since it was indexed is scanned
+// instead (the index should still be written again whenever the classes change)
+public class CombinationIndex {
+    public static void main(String[] args) throws Throwable {
+        if (args.length != 1) {
+            System.err.println("Usage: java -classpath javassist.jar:. ist.meic.pava.CombinationIndex <classes dir|jar>");
+            System.exit(1);
+        } else {
+            Path input = Paths.get(args[0]);
+            if (Files.isDirectory(input)) {
+                Path entry = input.resolve(ENTRY);
+                Files.createDirectories(entry.getParent());
+                Files.write(entry, write(scanDirectory(input)));
+            } else {
+                byte[] index = write(scanJar(input));
+                try (FileSystem jar = FileSystems.newFileSystem(input)) {
+                    Path entry = jar.getPath(ENTRY);
+                    Files.createDirectories(entry.getParent());
+                    Files.write(entry, index);
+                }
+            }
+        }
+    }
+
+    static final String ENTRY = "META-INF/ist.meic.pava/combinations.idx";
+    private static final int MAGIC = 0x434d4958;
+    private static final int FORMAT = 2;
+
+    // flags of the boolean annotation values
+    private static final int REVERSE_ORDER = 1;
+    private static final int PARALLEL = 2;
+    private static final int CACHEABLE = 4;
+    private static final int REORDERABLE = 8;
+
+    // The indexes of the class path entries, each one with a table of (name hash, record offset) entries sorted by hash
+    private List<ByteBuffer> indexes;
+
+    CombinationIndex(List<ByteBuffer> indexes) {
+        this.indexes = indexes;
+    }
+
+    // Loads the indexes of the given class path (null if none of its directories or jars has one)
+    // The index of a directory is memory-mapped, and the one of a jar is read into memory, as its entries may be compressed
+    static CombinationIndex load(String classPath) throws IOException {
+        List<ByteBuffer> indexes = new ArrayList<ByteBuffer>();
+        for (String element : classPath.split(File.pathSeparator)) {
+            if (element.isEmpty())
+                continue;
+
+            Path path = Paths.get(element);
+            if (Files.isDirectory(path) && Files.isRegularFile(path.resolve(ENTRY))) {
+                try (FileChannel channel = FileChannel.open(path.resolve(ENTRY), StandardOpenOption.READ)) {
+                    indexes.add(checkFormat(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path));
+                }
+            } else if (Files.isRegularFile(path) && element.endsWith(".jar")) {
+                try (JarFile jar = new JarFile(path.toFile())) {
+                    JarEntry entry = jar.getJarEntry(ENTRY);
+                    if (entry != null)
+                        indexes.add(checkFormat(ByteBuffer.wrap(jar.getInputStream(entry).readAllBytes()), path));
+                }
+            }
+        }
+
+        return indexes.isEmpty() ? null : new CombinationIndex(indexes);
+    }
+
+    static ByteBuffer checkFormat(ByteBuffer index, Path path) {
+        if (index.getInt(0) != MAGIC || index.getInt(4) != FORMAT)
+            throw new RuntimeException("Error: Invalid combination index in [" + path + "]! Index it again with CombinationIndex");
+
+        return index;
+    }
+
+    // Returns the indexed type of the given name (null if it is not indexed), decoding only its own record
+    IndexedType find(String className) {
+        int hash = className.hashCode();
+        for (ByteBuffer index : this.indexes) {
+            // the first entry with the hash, found by a binary search of the table
+            int low = 0;
+            int high = index.getInt(8);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (index.getInt(12 + middle * 8) < hash)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+
+            for (int i = low; i < index.getInt(8) && index.getInt(12 + i * 8) == hash; i++) {
+                ByteBuffer record = index.duplicate();
+                record.position(index.getInt(16 + i * 8));
+                if (readString(record).equals(className))
+                    return readType(record);
+            }
+        }
+
+        return null;
+    }
+
+    static IndexedType readType(ByteBuffer record) {
+        int length = record.getInt();
+        int checksum = record.getInt();
+        List<String> supertypes = new ArrayList<String>();
+        for (int i = record.getShort() & 0xffff; i > 0; i--)
+            supertypes.add(readString(record));
+
+        List<IndexedMethod> methods = new ArrayList<IndexedMethod>();
+        for (int i = record.getShort() & 0xffff; i > 0; i--) {
+            String name = readString(record);
+            String descriptor = readString(record);
+            String key = readString(record);
+            String qualifier = readString(record);
+            String value = readString(record);
+            int flags = record.get();
+            Combination combination = new CombineTranslator.BytecodeCombination(value, (flags & REVERSE_ORDER) != 0, (flags & PARALLEL) != 0, record.getInt(),
+                    record.getLong(), (flags & CACHEABLE) != 0, record.getInt(), record.getLong(), (flags & REORDERABLE) != 0);
+            methods.add(new IndexedMethod(name, descriptor, key, qualifier, combination));
+        }
+
+        return new IndexedType(length, checksum, supertypes, methods.isEmpty() ? Collections.emptyList() : methods);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Scans every class file of a directory tree (records by class name)
+    static Map<String, byte[]> scanDirectory(Path input) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(input)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        Map<String, byte[]> records = new TreeMap<String, byte[]>();
+        for (Path file : files)
+            if (isClassFile(input.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/")))
+                scan(Files.readAllBytes(file), records);
+
+        return records;
+    }
+
+    // Scans every class file of a jar (records by class name)
+    static Map<String, byte[]> scanJar(Path input) throws IOException {
+        Map<String, byte[]> records = new TreeMap<String, byte[]>();
+        try (JarFile jar = new JarFile(input.toFile())) {
+            for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements();) {
+                JarEntry entry = e.nextElement();
+                if (!entry.isDirectory() && isClassFile(entry.getName()))
+                    scan(jar.getInputStream(entry).readAllBytes(), records);
+            }
+        }
+
+        return records;
+    }
+
+    static boolean isClassFile(String entryName) {
+        return entryName.endsWith(".class") && !entryName.endsWith("module-info.class") && !entryName.startsWith("META-INF/");
+    }
+
+    // Encodes the record of a class: its name, the length and checksum of its class file, its direct supertypes and its combination methods
+    // Only the constant pool is checked for classes that never mention the annotation (no CtClass is built)
+    static void scan(byte[] bytecode, Map<String, byte[]> records) throws IOException {
+        ClassFile classFile = new ClassFile(new DataInputStream(new ByteArrayInputStream(bytecode)));
+        List<String> supertypes = new ArrayList<String>(List.of(classFile.getInterfaces()));
+        if (classFile.getSuperclass() != null && !classFile.getSuperclass().equals("java.lang.Object"))
+            supertypes.add(classFile.getSuperclass());
+
+        List<MethodInfo> methods = new ArrayList<MethodInfo>();
+        List<Combination> combinations = new ArrayList<Combination>();
+        if (CombineTranslator.usesCombination(classFile.getConstPool())) {
+            for (MethodInfo method : classFile.getMethods()) {
+                AnnotationsAttribute attribute = (AnnotationsAttribute)method.getAttribute(AnnotationsAttribute.visibleTag);
+                Annotation annotation = attribute != null ? attribute.getAnnotation(Combination.class.getName()) : null;
+                if (annotation != null && (method.getAccessFlags() & AccessFlag.STATIC) == 0) {
+                    methods.add(method);
+                    combinations.add(new CombineTranslator.BytecodeCombination(annotation));
+                }
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, classFile.getName());
+        out.writeInt(bytecode.length);
+        out.writeInt(checksum(bytecode));
+        out.writeShort(supertypes.size());
+        for (String supertype : supertypes)
+            writeString(out, supertype);
+
+        out.writeShort(methods.size());
+        for (int i = 0; i < methods.size(); i++) {
+            MethodInfo method = methods.get(i);
+            Combination combination = combinations.get(i);
+            String fixedName = method.getName().split("\\$")[0];
+            String qualifier = CombineTranslator.getQualifier(fixedName, combination);
+            writeString(out, method.getName());
+            writeString(out, method.getDescriptor());
+            writeString(out, CombineTranslator.getKey(fixedName, qualifier, method.getDescriptor(), combination));
+            writeString(out, qualifier);
+            writeString(out, combination.value());
+            out.writeByte((combination.reverseOrder() ? REVERSE_ORDER : 0) | (combination.parallel() ? PARALLEL : 0) | (combination.cacheable() ? CACHEABLE : 0)
+                    | (combination.reorderable() ? REORDERABLE : 0));
+            out.writeInt(combination.parallelThreshold());
+            out.writeLong(combination.timeout());
+            out.writeInt(combination.cacheSize());
+            out.writeLong(combination.cacheTtl());
+        }
+
+        records.put(classFile.getName(), bytes.toByteArray());
+    }
+
+    static int checksum(byte[] bytecode) {
+        CRC32 crc = new CRC32();
+        crc.update(bytecode);
+        return (int)crc.getValue();
+    }
+
+    static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    // Header (magic, format and number of types), table of (name hash, record offset) entries sorted by hash, and the records
+    static byte[] write(Map<String, byte[]> records) throws IOException {
+        List<String> names = new ArrayList<String>(records.keySet());
+        names.sort((a, b) -> Integer.compare(a.hashCode(), b.hashCode()));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeInt(names.size());
+
+        int offset = 12 + names.size() * 8;
+        for (String name : names) {
+            out.writeInt(name.hashCode());
+            out.writeInt(offset);
+            offset += records.get(name).length;
+        }
+
+        for (String name : names)
+            out.write(records.get(name));
+
+        return bytes.toByteArray();
+    }
+
+    // Record of an indexed type
+    static class IndexedType {
+        private int length;
+        private int checksum;
+        private List<String> supertypes;
+        private List<IndexedMethod> methods;
+
+        IndexedType(int length, int checksum, List<String> supertypes, List<IndexedMethod> methods) {
+            this.length = length;
+            this.checksum = checksum;
+            this.supertypes = supertypes;
+            this.methods = methods;
+        }
+
+        // Whether the record was read from the given class file (the length is compared first, as it is cheaper)
+        boolean isIndexed(byte[] bytecode) {
+            return bytecode.length == this.length && checksum(bytecode) == this.checksum;
+        }
+
+        List<String> supertypes() {
+            return this.supertypes;
+        }
+
+        List<IndexedMethod> methods() {
+            return this.methods;
+        }
+    }
+
+    // Combination method of an indexed type
+    static class IndexedMethod {
+        private String name;
+        private String descriptor;
+        private String key;
+        private String qualifier;
+        private Combination combination;
+
+        IndexedMethod(String name, String descriptor, String key, String qualifier, Combination combination) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.key = key;
+            this.qualifier = qualifier;
+            this.combination = combination;
+        }
+
+        String name() {
+            return this.name;
+        }
+
+        String descriptor() {
+            return this.descriptor;
+        }
+
+        String key() {
+            return this.key;
+        }
+
+        String qualifier() {
+            return this.qualifier;
+        }
+
+        Combination combination() {
+            return this.combination;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package ist.meic.pava;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Runtime alternative to the CombineTranslator: the combined methods are called through this class instead of being woven
+// (e.g. Combinations.invoke(person, "isHardWorker")), so the classes are loaded as they are, by any class loader
+// The effective method of each receiver class is computed (from the @Combination annotations) on its first call and kept as a
+// method handle, so the later calls do not use reflection: they look up the overloads of the name and call the first applicable one
+public final class Combinations {
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+    private static final List<String> QUALIFIERS = Arrays.asList("before", "after", "conditional", "default");
+
+    // Effective methods of each receiver class, by name and parameter types
+    private static final ClassValue<Map<List<Object>, EffectiveMethod>> effectiveMethods = new ClassValue<Map<List<Object>, EffectiveMethod>>() {
+        @Override
+        protected Map<List<Object>, EffectiveMethod> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<List<Object>, EffectiveMethod>();
+        }
+    };
+
+    // Class precedence list of each type (see Linearization), extended from the lists of its interfaces and its superclass
+    static final ClassValue<List<Class<?>>> precedenceLists = new ClassValue<List<Class<?>>>() {
+        @Override
+        protected List<Class<?>> computeValue(Class<?> type) {
+            return getPrecedenceList(type);
+        }
+    };
+
+    // Overloads of each combination called on each receiver class, by name (in the order of their first reachable method)
+    private static final ClassValue<Map<String, Overload[]>> overloads = new ClassValue<Map<String, Overload[]>>() {
+        @Override
+        protected Map<String, Overload[]> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<String, Overload[]>();
+        }
+    };
+
+    // Combination methods declared by each type
+    private static final ClassValue<List<CombinationMethod>> declaredMethods = new ClassValue<List<CombinationMethod>>() {
+        @Override
+        protected List<CombinationMethod> computeValue(Class<?> type) {
+            return getCombinationMethods(type);
+        }
+    };
+
+    // Combination methods reachable from each type, in the order used by the CombineTranslator
+    private static final ClassValue<List<CombinationMethod>> reachableMethods = new ClassValue<List<CombinationMethod>>() {
+        @Override
+        protected List<CombinationMethod> computeValue(Class<?> type) {
+            return retrieveCombinationMethods(type);
+        }
+    };
+
+    private Combinations() {}
+
+    // Calls the combination of the given name on the receiver (the method is chosen by the number and types of the arguments)
+    public static Object invoke(Object receiver, String name, Object... args) throws Throwable {
+        return (Object)find(receiver.getClass(), name, args).invoker.invokeExact(receiver, args);
+    }
+
+    // Returns the effective method of a combination, with the receiver as its first parameter
+    public static MethodHandle handle(Class<?> type, String name, Class<?>... parameterTypes) {
+        return effectiveMethod(type, name, parameterTypes).handle;
+    }
+
+    // Discards the effective methods computed for a class (e.g. after its methods are redefined)
+    public static void invalidate(Class<?> type) {
+        effectiveMethods.remove(type);
+        overloads.remove(type);
+        reachableMethods.remove(type);
+        declaredMethods.remove(type);
+    }
+
+    static EffectiveMethod find(Class<?> type, String name, Object[] args) {
+        Map<String, Overload[]> typeOverloads = overloads.get(type);
+        Overload[] nameOverloads = typeOverloads.get(name);
+        if (nameOverloads == null) {
+            nameOverloads = getOverloads(type, name);
+            typeOverloads.putIfAbsent(name, nameOverloads);
+        }
+
+        for (Overload overload : nameOverloads)
+            if (overload.isApplicable(args))
+                return overload.effectiveMethod(type, name);
+
+        throw new RuntimeException("Error: No combination [" + name + "] applicable to " + Arrays.toString(args) + " on [" + type.getName() + "]");
+    }
+
+    static EffectiveMethod effectiveMethod(Class<?> type, String name, Class<?>[] parameterTypes) {
+        Map<List<Object>, EffectiveMethod> methods = effectiveMethods.get(type);
+        List<Object> key = new ArrayList<Object>(Arrays.asList(parameterTypes));
+        key.add(0, name);
+
+        EffectiveMethod method = methods.get(key);
+        if (method == null) {
+            method = new EffectiveMethod(type, name, parameterTypes);
+            methods.putIfAbsent(key, method);
+        }
+
+        return method;
+    }
+
+    // The distinct parameter types of the reachable methods of a combination
+    static Overload[] getOverloads(Class<?> type, String name) {
+        List<Overload> nameOverloads = new ArrayList<Overload>();
+        for (CombinationMethod method : reachableMethods.get(type))
+            if (method.keyName.equals(name) && nameOverloads.stream().noneMatch(o -> Arrays.equals(o.parameterTypes, method.parameterTypes)))
+                nameOverloads.add(new Overload(method.parameterTypes));
+
+        return nameOverloads.toArray(new Overload[0]);
+    }
+
+    // The methods of each type in the class precedence list: the class's own methods come first, then the ones of its interfaces and superclass
+    static List<CombinationMethod> retrieveCombinationMethods(Class<?> type) {
+        List<CombinationMethod> reachable = new ArrayList<CombinationMethod>();
+        for (Class<?> precedingType : precedenceLists.get(type))
+            reachable.addAll(declaredMethods.get(precedingType));
+
+        return reachable.isEmpty() ? Collections.emptyList() : reachable;
+    }
+
+    static List<Class<?>> getPrecedenceList(Class<?> type) {
+        List<Class<?>> supertypes = new ArrayList<Class<?>>(Arrays.asList(type.getInterfaces()));
+        if (type.getSuperclass() != null && type.getSuperclass() != Object.class)
+            supertypes.add(type.getSuperclass());
+
+        List<List<Class<?>>> linearizations = new ArrayList<List<Class<?>>>();
+        for (Class<?> supertype : supertypes)
+            linearizations.add(precedenceLists.get(supertype));
+
+        return Linearization.<Class<?>>linearize(type, supertypes, linearizations);
+    }
+
+    static List<CombinationMethod> getCombinationMethods(Class<?> type) {
+        List<CombinationMethod> methods = new ArrayList<CombinationMethod>();
+        for (Method method : type.getDeclaredMethods())
+            if (method.isAnnotationPresent(Combination.class) && !Modifier.isStatic(method.getModifiers()))
+                methods.add(new CombinationMethod(method));
+
+        return methods.isEmpty() ? Collections.emptyList() : methods;
+    }
+
+    // Name of a combination method, without the qualifier of the standard combination (e.g. before_print_name is print_name)
+    // and without the suffix of the methods renamed by the CombineTranslator (e.g. print_name$original)
+    static String getKeyName(Method method, String qualifier) {
+        String fixedName = method.getName().split("\\$")[0];
+        return qualifier.isEmpty() ? fixedName : fixedName.split("_", 2)[1];
+    }
+
+    static String getQualifier(Method method, Combination combination) {
+        String[] parts = method.getName().split("\\$")[0].split("_", 2);
+        if (parts.length == 2 && QUALIFIERS.contains(parts[0]) && combination.value().equals("standard"))
+            return parts[0];
+
+        return "";
+    }
+
+    // A combination method, with its annotation, key name, qualifier and parameter types read once
+    static class CombinationMethod {
+        private final Method method;
+        private final Combination combination;
+        private final String qualifier;
+        private final String keyName;
+        private final Class<?>[] parameterTypes;
+
+        CombinationMethod(Method method) {
+            this.method = method;
+            this.combination = method.getAnnotation(Combination.class);
+            this.qualifier = getQualifier(method, this.combination);
+            this.keyName = getKeyName(method, this.qualifier);
+            this.parameterTypes = method.getParameterTypes();
+        }
+    }
+
+    // Parameter types of a combination (boxed, to check the arguments) and its effective method, computed on its first call
+    static class Overload {
+        private final Class<?>[] parameterTypes;
+        private final Class<?>[] argumentTypes;
+        private volatile EffectiveMethod effectiveMethod;
+
+        Overload(Class<?>[] parameterTypes) {
+            this.parameterTypes = parameterTypes;
+            this.argumentTypes = new Class<?>[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++)
+                this.argumentTypes[i] = parameterTypes[i].isPrimitive() ? MethodType.methodType(parameterTypes[i]).wrap().returnType() : parameterTypes[i];
+        }
+
+        boolean isApplicable(Object[] args) {
+            if (args.length != this.argumentTypes.length)
+                return false;
+
+            for (int i = 0; i < args.length; i++)
+                if (args[i] == null ? this.parameterTypes[i].isPrimitive() : !this.argumentTypes[i].isInstance(args[i]))
+                    return false;
+
+            return true;
+        }
+
+        EffectiveMethod effectiveMethod(Class<?> type, String name) {
+            EffectiveMethod method = this.effectiveMethod;
+            if (method == null)
+                this.effectiveMethod = method = Combinations.effectiveMethod(type, name, this.parameterTypes);
+
+            return method;
+        }
+    }
+
+    // Handle to a method as declared by its class (it is not dispatched to the overriding methods of the receiver's class)
+    static MethodHandle unreflectSpecial(Method method, Class<?> receiverType) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup());
+            MethodHandle handle = lookup.findSpecial(declaringClass, method.getName(), MethodType.methodType(method.getReturnType(), method.getParameterTypes()),
+                    declaringClass);
+            return handle.asType(handle.type().changeParameterType(0, receiverType));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Error: Could not access the combined method [" + declaringClass.getName() + "." + method.getName() + "]", e);
+        }
+    }
+
+    static class EffectiveMethod {
+        private MethodHandle handle;
+        private MethodHandle invoker;
+
+        EffectiveMethod(Class<?> type, String name, Class<?>[] parameterTypes) {
+            List<CombinationMethod> methods = new ArrayList<CombinationMethod>();
+            for (CombinationMethod method : reachableMethods.get(type))
+                if (method.keyName.equals(name) && Arrays.equals(method.parameterTypes, parameterTypes))
+                    methods.add(method);
+
+            if (methods.isEmpty())
+                throw new RuntimeException("Error: No combination [" + name + "] on [" + type.getName() + "]");
+
+            // the combination of the primary method of the class itself prevails
+            Combination combination = methods.stream().filter(m -> m.method.getDeclaringClass() == type && m.qualifier.equals("")).findFirst()
+                    .orElse(methods.get(0)).combination;
+            methods.removeIf(m -> !m.combination.value().equals(combination.value()));
+
+            CombinationMethod primary = methods.stream().filter(m -> m.qualifier.equals("")).findFirst().orElse(null);
+            if (primary == null)
+                throw new RuntimeException("Error: No primary method for the combination [" + name + "] on [" + type.getName() + "]");
+
+            MethodType methodType = MethodType.methodType(primary.method.getReturnType(), parameterTypes).insertParameterTypes(0, type);
+            this.handle = combination.value().equals("standard") ? linkStandard(type, methods, combination, methodType) : linkSimple(type, methods, combination, methodType);
+            this.invoker = this.handle.asSpreader(Object[].class, parameterTypes.length).asType(INVOKER_TYPE);
+        }
+
+        MethodHandle linkSimple(Class<?> type, List<CombinationMethod> methods, Combination combination, MethodType methodType) {
+            List<MethodHandle> handles = new ArrayList<MethodHandle>();
+            for (CombinationMethod method : methods)
+                handles.add(unreflectSpecial(method.method, type));
+
+            if (combination.reverseOrder()) // @extension_6
+                Collections.reverse(handles);
+
+            return CombinationHandles.simple(combination.value(), handles, methodType);
+        }
+
+        MethodHandle linkStandard(Class<?> type, List<CombinationMethod> methods, Combination combination, MethodType methodType) {
+            List<MethodHandle> befores = new ArrayList<MethodHandle>();
+            List<MethodHandle> afters = new ArrayList<MethodHandle>();
+            MethodHandle primary = null;
+            MethodHandle conditional = null;
+            MethodHandle defaultNext = null;
+
+            for (CombinationMethod method : methods) {
+                String qualifier = method.qualifier;
+                if (qualifier.equals("before"))
+                    befores.add(MethodHandles.dropReturn(unreflectSpecial(method.method, type)));
+                else if (qualifier.equals("after"))
+                    afters.add(0, MethodHandles.dropReturn(unreflectSpecial(method.method, type)));
+                else if (qualifier.equals("conditional") && conditional == null)
+                    conditional = unreflectSpecial(method.method, type);
+                else if (qualifier.equals("default") && defaultNext == null)
+                    defaultNext = unreflectSpecial(method.method, type);
+                else if (qualifier.equals("") && primary == null)
+                    primary = unreflectSpecial(method.method, type);
+            }
+
+            if (combination.reverseOrder()) { // @extension_6
+                Collections.reverse(befores);
+                Collections.reverse(afters);
+            }
+
+            // both the conditional and the default methods are required (@extension_9)
+            if (conditional == null || defaultNext == null)
+                conditional = defaultNext = null;
+
+            return CombinationHandles.standard(befores, primary, conditional, defaultNext, afters, methodType);
+        }
+    }
+}
@@ -0,0 +1,1361 @@
+package ist.meic.pava;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.Translator;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.BootstrapMethodsAttribute;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import javassist.bytecode.annotation.Annotation;
+import javassist.bytecode.annotation.BooleanMemberValue;
+import javassist.bytecode.annotation.IntegerMemberValue;
+import javassist.bytecode.annotation.LongMemberValue;
+import javassist.bytecode.annotation.StringMemberValue;
+import javassist.expr.ExprEditor;
+import javassist.expr.MethodCall;
+
+class CombineTranslator implements Translator {
+    // Must change whenever the woven code changes (invalidates the classes stored by WovenClassCache)
+    private static final String VERSION = "15";
+
+    // Weaving options (set with -D<option>=true)
+    // ist.meic.pava.delegate: call the inherited methods where they are declared, instead of copying them to every subclass
+    static final boolean DELEGATE = Boolean.getBoolean("ist.meic.pava.delegate");
+    // ist.meic.pava.indy: the combined methods are a single invokedynamic, linked at their first call by CombinationBootstrap
+    static final boolean INDY = Boolean.getBoolean("ist.meic.pava.indy");
+    // ist.meic.pava.lazy: the combined methods are stubs, combined (by the Combinations runtime engine) when they are first called
+    static final boolean LAZY = Boolean.getBoolean("ist.meic.pava.lazy");
+    // ist.meic.pava.callMetrics: the combined methods count (and sample the time of) the calls of each method (see CallMetrics)
+    static final boolean CALL_METRICS = Boolean.getBoolean("ist.meic.pava.callMetrics");
+    // ist.meic.pava.jfr: the combined methods (and the weaving of each class) emit JFR events (disabled by default, see CombinedMethodEvent)
+    static final boolean JFR = Boolean.getBoolean("ist.meic.pava.jfr");
+    // ist.meic.pava.inline=<bytes>: the methods of the class whose code is not bigger than this are copied into the combined methods instead of called
+    static final int INLINE = Integer.getInteger("ist.meic.pava.inline", 0);
+    // ist.meic.pava.splitSize=<bytes>: the combined methods whose code is bigger than this (by default, HotSpot's HugeMethodLimit) are split into helpers
+    static final int SPLIT_SIZE = Integer.getInteger("ist.meic.pava.splitSize", 8000);
+    // ist.meic.pava.index=<class path>: the combination indexes (see CombinationIndex) are loaded from these directories and jars (by default, the class path)
+    static final String INDEX = System.getProperty("ist.meic.pava.index", System.getProperty("java.class.path", ""));
+    // ist.meic.pava.metrics: collects the WeavingMetrics (the woven code does not change)
+    static final WeavingMetrics METRICS = Boolean.getBoolean("ist.meic.pava.metrics") ? WeavingMetrics.register() : null;
+
+    static final String COMBINATION_DESCRIPTOR = "L" + Combination.class.getName().replace('.', '/') + ";";
+    static final String BOOTSTRAP_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;"
+            + "[Ljava/lang/String;)Ljava/lang/invoke/CallSite;";
+
+    private static Map<String, String> operations = new HashMap<String, String>();
+    private static List<String> qualifiers = Arrays.asList("before", "after", "conditional", "default");
+
+    // Memoized scans: the combination methods declared by each type (empty if none), and the class precedence list of each type
+    // They are kept by class name, as the agent and the offline weaver detach the CtClass of each woven class
+    private Map<String, List<CombinationMethod>> declaredCombinationMethods = new HashMap<String, List<CombinationMethod>>();
+    private Map<String, List<String>> precedenceLists = new HashMap<String, List<String>>();
+
+    // Directories and jars whose combination indexes are loaded, and the indexes themselves (null if none)
+    private String indexPath;
+    private CombinationIndex index;
+    private boolean staleIndex;
+    private ClassPool pool;
+
+    public CombineTranslator() {
+        this(CombineTranslator.INDEX);
+    }
+
+    CombineTranslator(String indexPath) {
+        this.indexPath = indexPath;
+    }
+
+    public void start(ClassPool pool) throws NotFoundException, CannotCompileException {
+        CombineTranslator.operations.put("or", "||");
+        CombineTranslator.operations.put("and", "&&");
+        CombineTranslator.operations.put("sum", "+"); // @extension_1
+        CombineTranslator.operations.put("prod", "*"); // @extension_2
+
+        this.pool = pool;
+        try {
+            this.index = CombinationIndex.load(this.indexPath);
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Could not load the combination indexes of [" + this.indexPath + "]", e);
+        }
+    }
+
+    public void onLoad(ClassPool pool, String className) throws NotFoundException, CannotCompileException {
+        CtClass ctClass = pool.get(className);
+        WeavingEvent event = CombineTranslator.JFR ? new WeavingEvent() : null;
+        boolean recorded = event != null && event.isEnabled();
+        int originalSize = METRICS != null || recorded ? WeavingMetrics.classFileSize(ctClass) : 0;
+        if (recorded)
+            event.begin();
+
+        long start = System.nanoTime();
+        try {
+            combineMethods(ctClass);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (METRICS != null)
+            METRICS.classWoven(pool, ctClass, System.nanoTime() - start, originalSize);
+        if (recorded && event.shouldCommit())
+            event.end(className, WeavingMetrics.classFileSize(ctClass) - originalSize);
+    }
+
+    static String weaverVersion() {
+        return CombineTranslator.VERSION + (CombineTranslator.DELEGATE ? "+delegate" : "") + (CombineTranslator.INDY ? "+indy" : "") + (CombineTranslator.LAZY ? "+lazy" : "")
+                + (CombineTranslator.CALL_METRICS ? "+callMetrics" : "") + (CombineTranslator.JFR ? "+jfr" : "")
+                + (CombineTranslator.INLINE > 0 ? "+inline" + CombineTranslator.INLINE : "")
+                + (CombineTranslator.SPLIT_SIZE != 8000 ? "+split" + CombineTranslator.SPLIT_SIZE : "");
+    }
+
+    // Get methods grouped and compute the combination on each one of those groups
+    void combineMethods(CtClass ctClass) throws ClassNotFoundException, CannotCompileException, NotFoundException {
+        long start = System.nanoTime();
+        List<CombinationMethod> methods = retrieveCombinationMethods(ctClass);
+        if (METRICS != null)
+            METRICS.scanned(System.nanoTime() - start);
+        if (methods.isEmpty())
+            return;
+
+        start = System.nanoTime();
+        if (CombineTranslator.LAZY && useLazyStubs(ctClass))
+            methods = addLazyStubs(ctClass, methods);
+
+        Map<String, List<MethodCopy>> combinationMethods = new HashMap<String, List<MethodCopy>>();
+        for (CombinationMethod method : methods)
+            copyCombinationMethod(ctClass, method, combinationMethods);
+        for (List<MethodCopy> keyCombinationMethods : combinationMethods.values())
+            combine(ctClass, keyCombinationMethods);
+
+        // copying and compiling the methods
+        if (METRICS != null)
+            METRICS.compiled(System.nanoTime() - start);
+    }
+
+    // Call appropriate method combination type (simple or standard)
+    void combine(CtClass ctClass, List<MethodCopy> keyCombinationMethods) throws CannotCompileException, NotFoundException, ClassNotFoundException {
+        // Look for "reverse" flag for @extension_6
+        MethodCopy primaryMethod = keyCombinationMethods.stream().filter(m -> m.isDeclaredBy(ctClass) && m.qualifier().equals("")).findFirst()
+                .orElse(keyCombinationMethods.get(0));
+
+        Combination combination = primaryMethod.combination();
+        if (combination.cacheable() && !operations.containsKey(combination.value())) // @extension_12
+            throw new RuntimeException("Error: Invalid cacheable combination value [" + combination.value() + "]! Values: ['or', 'and', 'sum' and 'prod']");
+
+        if (combination.value().equals("standard"))
+            combineStandard(ctClass, keyCombinationMethods, combination);
+        else if (operations.containsKey(combination.value()))
+            combineSimple(ctClass, keyCombinationMethods, combination);
+        else if (combination.value().equals("collect"))
+            combineCollection(ctClass, keyCombinationMethods, combination); // @extension_8
+        else
+            throw new RuntimeException("Error: Invalid combination value [" + combination.value() + "]! Values: ['or', 'and', 'sum', 'prod' and 'standard']");
+
+        // the methods are only called (and their events emitted) when the cache misses, but every call of the combined method emits its event
+        if (CombineTranslator.JFR)
+            addContributorEvents(ctClass, keyCombinationMethods, combination);
+        if (combination.cacheable()) // @extension_12
+            addCache(ctClass, keyCombinationMethods, combination);
+        if (CombineTranslator.JFR)
+            addCombinedMethodEvent(ctClass, keyCombinationMethods, combination);
+    }
+
+    void combineSimple(CtClass ctClass, List<MethodCopy> methods, Combination combination)
+            throws CannotCompileException, NotFoundException, ClassNotFoundException {
+
+        List<String> methodNames = new ArrayList<String>();
+        List<CtMethod> combinedMethods = new ArrayList<CtMethod>();
+        CtMethod ctMethod = getSimpleMethodNames(ctClass, methods, combination, methodNames, combinedMethods);
+
+        String body;
+        if (isAsync(ctMethod.getReturnType())) { // @extension_11
+            body = getAsyncBody(ctClass, ctMethod, methodNames, combination);
+        } else if (isParallel(combination, methodNames)) { // @extension_10
+            body = getParallelBody(ctClass, ctMethod, methodNames, combination);
+        } else if (isReorderable(ctClass, combination)) { // @extension_14
+            setInvokedynamicBody(ctClass, ctMethod, "reorderable:" + combination.value(), methodNames);
+            ctClass.addMethod(ctMethod);
+            return;
+        } else if (useInvokedynamic(ctClass)) {
+            setInvokedynamicBody(ctClass, ctMethod, combination.value(), methodNames);
+            ctClass.addMethod(ctMethod);
+            return;
+        } else if (CombineTranslator.CALL_METRICS) {
+            body = getMeteredSimpleBody(ctClass, ctMethod, methods, methodNames, combination);
+        } else {
+            CombinationBytecode.setSimpleBody(ctClass, ctMethod, combination.value(), getFoldedTerms(ctMethod, combinedMethods, combination));
+            ctClass.addMethod(ctMethod);
+            return;
+        }
+
+        ctMethod.setBody(body);
+        ctClass.addMethod(ctMethod);
+    }
+
+    // Terms of a simple combination (the methods to call), with the methods that just return a constant folded (@extension_13):
+    // a deciding constant (true for 'or', false for 'and') ends the combination, as the methods after it are never called,
+    // while the neutral ones are dropped and the integer addends (or factors) are combined into a single constant
+    List<Object> getFoldedTerms(CtMethod ctMethod, List<CtMethod> methods, Combination combination) throws NotFoundException {
+        CtClass returnType = ctMethod.getReturnType();
+        boolean integral = returnType != CtClass.floatType && returnType != CtClass.doubleType;
+        boolean product = combination.value().equals("prod");
+        boolean folded = false;
+        long constant = product ? 1 : 0;
+
+        List<Object> terms = new ArrayList<Object>();
+        for (CtMethod method : methods) {
+            Number value = getConstantResult(method);
+            if (value == null || !integral) {
+                terms.add(method);
+            } else if (returnType == CtClass.booleanType) {
+                boolean result = value.intValue() != 0;
+                if (result == combination.value().equals("or")) {
+                    terms.add(result);
+                    break;
+                }
+            } else {
+                constant = product ? constant * value.longValue() : constant + value.longValue();
+                folded = true;
+            }
+        }
+
+        if (folded)
+            terms.add(returnType == CtClass.longType ? (Object)constant : (Object)(int)constant);
+        else if (terms.isEmpty())
+            terms.add(combination.value().equals("and"));
+
+        return terms;
+    }
+
+    // Returns the constant returned by a method whose code is just a constant (int, boolean or long) and a return (null otherwise)
+    static Number getConstantResult(CtMethod ctMethod) {
+        CodeAttribute code = ctMethod.getMethodInfo2().getCodeAttribute();
+        if (code == null || Modifier.isSynchronized(ctMethod.getModifiers()))
+            return null;
+
+        try {
+            CodeIterator iterator = code.iterator();
+            int index = iterator.next();
+            int opcode = iterator.byteAt(index);
+            Object value;
+            if (opcode >= Opcode.ICONST_M1 && opcode <= Opcode.ICONST_5)
+                value = opcode - Opcode.ICONST_0;
+            else if (opcode == Opcode.LCONST_0 || opcode == Opcode.LCONST_1)
+                value = (long)(opcode - Opcode.LCONST_0);
+            else if (opcode == Opcode.BIPUSH)
+                value = iterator.signedByteAt(index + 1);
+            else if (opcode == Opcode.SIPUSH)
+                value = iterator.s16bitAt(index + 1);
+            else if (opcode == Opcode.LDC)
+                value = code.getConstPool().getLdcValue(iterator.byteAt(index + 1));
+            else if (opcode == Opcode.LDC_W || opcode == Opcode.LDC2_W)
+                value = code.getConstPool().getLdcValue(iterator.u16bitAt(index + 1));
+            else
+                return null;
+
+            if (!(value instanceof Integer || value instanceof Long) || !iterator.hasNext())
+                return null;
+
+            opcode = iterator.byteAt(iterator.next());
+            if ((opcode != Opcode.IRETURN && opcode != Opcode.LRETURN) || iterator.hasNext())
+                return null;
+
+            return (Number)value;
+        } catch (BadBytecode e) {
+            return null;
+        }
+    }
+
+    void combineStandard(CtClass ctClass, List<MethodCopy> methods, Combination combination)
+            throws CannotCompileException, NotFoundException, ClassNotFoundException {
+        String name = methods.get(0).name();
+        MethodCopy primaryMethodCopy = null;
+        List<MethodCopy> beforeMethods = new ArrayList<MethodCopy>();
+        List<MethodCopy> afterMethods = new ArrayList<MethodCopy>();
+
+        for (MethodCopy method : methods) {
+            if (method.qualifier().equals("before"))
+                beforeMethods.add(method);
+            else if (method.qualifier().equals("after"))
+                afterMethods.add(0, method);
+            else if (primaryMethodCopy == null && method.qualifier().equals(""))
+                primaryMethodCopy = method;
+        }
+
+        MethodCopy conditionalMethod = getFirstMethodWithQualifier(methods, "conditional");
+        MethodCopy defaultMethod = getFirstMethodWithQualifier(methods, "default");
+
+        // if there is no primary method, don't create a generic method
+        if (primaryMethodCopy == null)
+            return;
+
+        List<CtMethod> beforeCtMethods = new ArrayList<CtMethod>();
+        List<CtMethod> afterCtMethods = new ArrayList<CtMethod>();
+        List<String> beforeMethodNames = getPrefixedMethodNames(ctClass, name, beforeMethods, "before", beforeCtMethods);
+        List<String> afterMethodNames = getPrefixedMethodNames(ctClass, name, afterMethods, "after", afterCtMethods);
+
+        CtMethod primaryMethod = null;
+        CtClass combinationReturnType = CtClass.voidType;
+        combinationReturnType = primaryMethodCopy.ctMethod().getReturnType();
+        if (primaryMethodCopy.isDeclaredBy(ctClass) && !primaryMethodCopy.delegated()) {
+            primaryMethod = getCtDeclaredMethod(ctClass, name, primaryMethodCopy.ctMethod().getParameterTypes());
+            primaryMethod.setName(name + "$original");
+        } else {
+            primaryMethod = primaryMethodCopy.ctMethod();
+            addCopy(ctClass, primaryMethodCopy);
+            // the primary method is called through its alias, so the combined method takes its place
+            if (primaryMethodCopy.isDeclaredBy(ctClass)) {
+                CtMethod originalMethod = getCtDeclaredMethod(ctClass, name, primaryMethodCopy.ctMethod().getParameterTypes());
+                copyAnnotations(originalMethod, primaryMethodCopy.ctMethod());
+                ctClass.removeMethod(originalMethod);
+            }
+        }
+
+        if (combination.reverseOrder()) { // @extension_6
+            Collections.reverse(beforeMethodNames);
+            Collections.reverse(afterMethodNames);
+            Collections.reverse(beforeCtMethods);
+            Collections.reverse(afterCtMethods);
+        }
+
+        CtMethod conditionalCtMethod = null;
+        CtMethod defaultNextCtMethod = null;
+        if (conditionalMethod != null && defaultMethod != null) { // @extension_9
+            conditionalCtMethod = conditionalMethod.ctMethod();
+            defaultNextCtMethod = defaultMethod.ctMethod();
+            addCopy(ctClass, conditionalMethod);
+            addCopy(ctClass, defaultMethod);
+        }
+
+        CtMethod template = methods.get(0).ctMethod();
+        if (!isAsync(combinationReturnType) && useInvokedynamic(ctClass)) {
+            List<String> qualifiedMethodNames = new ArrayList<String>();
+            beforeMethodNames.forEach(n -> qualifiedMethodNames.add("before:" + n));
+            if (conditionalCtMethod != null) { // @extension_9
+                qualifiedMethodNames.add("conditional:" + conditionalCtMethod.getName());
+                qualifiedMethodNames.add("default:" + defaultNextCtMethod.getName());
+            }
+            qualifiedMethodNames.add(":" + primaryMethod.getName());
+            afterMethodNames.forEach(n -> qualifiedMethodNames.add("after:" + n));
+
+            // the body is replaced by the invokedynamic
+            CtMethod combinationMethod = CtNewMethod.make(combinationReturnType, name, template.getParameterTypes(), template.getExceptionTypes(), null, ctClass);
+            setInvokedynamicBody(ctClass, combinationMethod, combination.value(), qualifiedMethodNames);
+            ctClass.addMethod(combinationMethod);
+            return;
+        }
+
+        String body;
+        if (isAsync(combinationReturnType)) { // @extension_11
+            List<String> primaryMethodNames = conditionalCtMethod != null
+                    ? Arrays.asList(conditionalCtMethod.getName(), primaryMethod.getName(), defaultNextCtMethod.getName())
+                    : Arrays.asList(primaryMethod.getName());
+            body = getAsyncStandardBody(ctClass, name, template.getSignature(), beforeMethodNames, primaryMethodNames, afterMethodNames);
+        } else if (CombineTranslator.CALL_METRICS) {
+            body = getMeteredStandardBody(ctClass, methods, combination, combinationReturnType, beforeMethodNames,
+                    primaryMethod.getName(), conditionalCtMethod != null ? conditionalCtMethod.getName() : null,
+                    defaultNextCtMethod != null ? defaultNextCtMethod.getName() : null, afterMethodNames);
+        } else {
+            CtMethod combinationMethod = CtNewMethod.make(combinationReturnType, name, template.getParameterTypes(), template.getExceptionTypes(), null, ctClass);
+            CombinationBytecode.setStandardBody(ctClass, combinationMethod, beforeCtMethods, primaryMethod, conditionalCtMethod, defaultNextCtMethod,
+                    afterCtMethods);
+            ctClass.addMethod(combinationMethod);
+            return;
+        }
+
+        CtMethod combinationMethod = CtNewMethod.make(combinationReturnType, name, template.getParameterTypes(), template.getExceptionTypes(), body, ctClass);
+        ctClass.addMethod(combinationMethod);
+    }
+
+    void combineCollection(CtClass ctClass, List<MethodCopy> methods, Combination combination)
+            throws CannotCompileException, NotFoundException, ClassNotFoundException {
+
+        List<String> methodNames = new ArrayList<String>();
+        List<CtMethod> combinedMethods = new ArrayList<CtMethod>();
+        CtMethod ctMethod = getSimpleMethodNames(ctClass, methods, combination, methodNames, combinedMethods);
+        if (isAsync(ctMethod.getReturnType())) { // @extension_11
+            ctMethod.setBody(getAsyncBody(ctClass, ctMethod, methodNames, combination));
+            ctClass.addMethod(ctMethod);
+            return;
+        } else if (isParallel(combination, methodNames)) { // @extension_10
+            ctMethod.setBody(getParallelBody(ctClass, ctMethod, methodNames, combination));
+            ctClass.addMethod(ctMethod);
+            return;
+        } else if (useInvokedynamic(ctClass)) {
+            setInvokedynamicBody(ctClass, ctMethod, combination.value(), methodNames);
+            ctClass.addMethod(ctMethod);
+            return;
+        }
+
+        // each method is called only once and its result is copied straight to an array of the exact total length
+        // (this also works for arrays of primitive types)
+        CombinationBytecode.setCollectBody(ctClass, ctMethod, new ArrayList<Object>(combinedMethods));
+        ctClass.addMethod(ctMethod);
+    }
+
+    // Parallel combinations are only used when there are enough methods to pay for the scheduling overhead
+    boolean isParallel(Combination combination, List<String> methodNames) {
+        return combination.parallel() && methodNames.size() >= combination.parallelThreshold();
+    }
+
+    // Returns the body of a combination whose methods are evaluated concurrently (and then reduced) at runtime
+    String getParallelBody(CtClass ctClass, CtMethod ctMethod, List<String> methodNames, Combination combination) throws CannotCompileException {
+        String contributors = addContributorsField(ctClass, ctMethod.getName(), ctMethod.getSignature(), methodNames);
+        return "{ return ($r) " + ParallelCombination.class.getName() + ".invoke(" + contributors + ", this, $args, \"" + combination.value() + "\", "
+                + combination.timeout() + "L); }";
+    }
+
+    // Methods returning a CompletableFuture are combined by composing their futures instead of blocking
+    boolean isAsync(CtClass returnType) {
+        return returnType.getName().equals(CompletableFuture.class.getName());
+    }
+
+    String getAsyncBody(CtClass ctClass, CtMethod ctMethod, List<String> methodNames, Combination combination) throws CannotCompileException {
+        String contributors = addContributorsField(ctClass, ctMethod.getName(), ctMethod.getSignature(), methodNames);
+        return "{ return " + AsyncCombination.class.getName() + ".simple(" + contributors + ", this, $args, \"" + combination.value() + "\"); }";
+    }
+
+    String getAsyncStandardBody(CtClass ctClass, String name, String descriptor, List<String> beforeMethodNames, List<String> primaryMethodNames,
+            List<String> afterMethodNames) throws CannotCompileException {
+
+        String befores = addContributorsField(ctClass, name, descriptor, beforeMethodNames);
+        String primaries = addContributorsField(ctClass, name, descriptor, primaryMethodNames);
+        String afters = addContributorsField(ctClass, name, descriptor, afterMethodNames);
+        return "{ return " + AsyncCombination.class.getName() + ".standard(" + befores + ", " + primaries + ", " + afters + ", this, $args); }";
+    }
+
+    // Same as the simple combination body, but each call is counted (and sampled) by its CallMetrics, even when it throws
+    String getMeteredSimpleBody(CtClass ctClass, CtMethod ctMethod, List<MethodCopy> methods, List<String> methodNames, Combination combination)
+            throws CannotCompileException, NotFoundException {
+
+        String metrics = addMetricsField(ctClass, methods, combination, methodNames);
+        String type = ctMethod.getReturnType().getName();
+        String operation = CombineTranslator.operations.get(combination.value());
+        String body = "{ long $start; " + type + " $result; ";
+        for (int i = 0; i < methodNames.size(); i++) {
+            String call = methodNames.get(i) + "($$)";
+            body += "$start = " + metrics + "[" + i + "].start(); ";
+            body += "try { $result = " + (i == 0 || combination.value().equals("or") || combination.value().equals("and") ? call
+                    : "(" + type + ")($result " + operation + " " + call + ")") + "; } ";
+            body += "finally { " + metrics + "[" + i + "].end($start); } ";
+            if (i < methodNames.size() - 1 && combination.value().equals("or"))
+                body += "if ($result) return true; ";
+            else if (i < methodNames.size() - 1 && combination.value().equals("and"))
+                body += "if (!$result) return false; ";
+        }
+
+        return body + "return $result; }";
+    }
+
+    // Same as the standard combination body, but each call is counted (and sampled) by its CallMetrics
+    String getMeteredStandardBody(CtClass ctClass, List<MethodCopy> methods, Combination combination, CtClass returnType, List<String> beforeMethodNames,
+            String primaryMethodName, String conditionalMethodName, String defaultMethodName, List<String> afterMethodNames)
+            throws CannotCompileException, NotFoundException {
+
+        List<String> methodNames = new ArrayList<String>(beforeMethodNames);
+        methodNames.add(primaryMethodName);
+        if (conditionalMethodName != null) { // @extension_9
+            methodNames.add(conditionalMethodName);
+            methodNames.add(defaultMethodName);
+        }
+        methodNames.addAll(afterMethodNames);
+
+        String metrics = addMetricsField(ctClass, methods, combination, methodNames);
+        String result = returnType != CtClass.voidType ? "$result = " : ""; // @extension_5
+        String body = "{ long $start; " + (returnType != CtClass.voidType ? returnType.getName() + " $result; " : "")
+                + (conditionalMethodName != null ? "boolean $condition; " : "");
+        for (int i = 0; i < beforeMethodNames.size(); i++)
+            body += getMeteredCall(metrics, i, "", beforeMethodNames.get(i));
+
+        int primary = beforeMethodNames.size();
+        if (conditionalMethodName != null) { // @extension_9
+            body += getMeteredCall(metrics, primary + 1, "$condition = ", conditionalMethodName);
+            body += "if ($condition) { " + getMeteredCall(metrics, primary, result, primaryMethodName) + "} ";
+            body += "else { " + getMeteredCall(metrics, primary + 2, result, defaultMethodName) + "} ";
+        } else {
+            body += getMeteredCall(metrics, primary, result, primaryMethodName);
+        }
+
+        for (int i = 0; i < afterMethodNames.size(); i++)
+            body += getMeteredCall(metrics, methodNames.size() - afterMethodNames.size() + i, "", afterMethodNames.get(i));
+
+        return body + (returnType != CtClass.voidType ? "return $result; " : "") + "}";
+    }
+
+    // The call is still counted (and its time sampled) when the method throws
+    String getMeteredCall(String metrics, int index, String assignment, String methodName) {
+        return "$start = " + metrics + "[" + index + "].start(); try { " + assignment + methodName + "($$); } finally { " + metrics + "[" + index
+                + "].end($start); } ";
+    }
+
+    // Adds a static field with the CallMetrics of the given methods and returns its name
+    // The methods are registered by the class and name where they are declared (e.g. test.Student.isHardWorker), as their copies have other names
+    String addMetricsField(CtClass ctClass, List<MethodCopy> methods, Combination combination, List<String> methodNames)
+            throws CannotCompileException, NotFoundException {
+
+        String name = methods.get(0).name();
+        String signature = methods.get(0).ctMethod().getSignature();
+        String key = name + "$" + signature.substring(1, signature.indexOf(")")) + "$" + combination.value();
+
+        String fieldName = name + "$$metrics";
+        for (int i = 0; hasField(ctClass, fieldName); i++)
+            fieldName = name + "$$metrics$" + i;
+
+        String names = methodNames.stream().map(n -> "\"" + getDeclaredName(ctClass, methods, n) + "\"").collect(Collectors.joining(", "));
+        CtField field = CtField.make("static final " + CallMetrics.class.getName() + "[] " + fieldName + ";", ctClass);
+        field.setModifiers(Modifier.PUBLIC | Modifier.STATIC | Modifier.FINAL);
+        ctClass.addField(field, CtField.Initializer.byExpr(CallMetrics.class.getName() + ".register(\"" + key + "\", new String[] { " + names + " })"));
+        return fieldName;
+    }
+
+    // Returns the class and name where a method to call is declared (the methods of the class itself are called by other names, e.g. name$original)
+    String getDeclaredName(CtClass ctClass, List<MethodCopy> methods, String methodName) {
+        for (MethodCopy method : methods)
+            if ((!method.isDeclaredBy(ctClass) || method.delegated()) && method.ctMethod().getName().equals(methodName))
+                return method.ctClass().getName() + "." + (method.qualifier().isEmpty() ? method.name() : method.qualifier() + "_" + method.name());
+
+        return ctClass.getName() + "." + methodName.split("\\$")[0];
+    }
+
+    // Makes the combined method look up its result in a CombinationCache before calling the combined methods
+    // The arguments are only boxed if there is more than one or if it is an object (a single primitive argument is a long key)
+    void addCache(CtClass ctClass, List<MethodCopy> methods, Combination combination) throws CannotCompileException, NotFoundException {
+        String name = methods.get(0).name();
+        CtMethod combinedMethod = getCtDeclaredMethod(ctClass, name, methods.get(0).ctMethod().getParameterTypes());
+        CtClass[] parameters = combinedMethod.getParameterTypes();
+        String key = "this";
+        if (parameters.length == 1 && parameters[0] == CtClass.booleanType)
+            key += ", $1 ? 1L : 0L";
+        else if (parameters.length == 1 && (parameters[0] == CtClass.doubleType || parameters[0] == CtClass.floatType))
+            key += ", Double.doubleToRawLongBits((double)$1)";
+        else if (parameters.length == 1 && parameters[0].isPrimitive())
+            key += ", (long)$1";
+        else if (parameters.length > 0)
+            key += ", $args";
+
+        String fieldName = name + "$$cache";
+        for (int i = 0; hasField(ctClass, fieldName); i++)
+            fieldName = name + "$$cache$" + i;
+
+        String cache = CombinationCache.class.getName();
+        CtField field = CtField.make("static final " + cache + " " + fieldName + ";", ctClass);
+        field.setModifiers(Modifier.PUBLIC | Modifier.STATIC | Modifier.FINAL);
+        ctClass.addField(field, CtField.Initializer.byExpr(cache + ".of(java.lang.invoke.MethodHandles.lookup(), " + combination.cacheSize() + ", "
+                + combination.cacheTtl() + "L)"));
+
+        combinedMethod.setName(name + "$uncached");
+        CtMethod cachedMethod = CtNewMethod.copy(combinedMethod, name, ctClass, null);
+        cachedMethod.setBody("{ Object $cached = " + fieldName + ".get(" + key + "); if ($cached != " + cache + ".MISS) return ($r)$cached; "
+                + combinedMethod.getReturnType().getName() + " $result = " + name + "$uncached($$); " + fieldName + ".put(" + key + ", ($w)$result); return $result; }");
+        ctClass.addMethod(cachedMethod);
+    }
+
+    // Makes the combined method emit a ContributorEvent for each method it calls
+    void addContributorEvents(CtClass ctClass, List<MethodCopy> methods, Combination combination) throws CannotCompileException, NotFoundException {
+        String name = methods.get(0).name();
+        String key = getEventKey(methods, combination);
+        // a standard combination without a primary method has no combined method
+        CtMethod combinedMethod = getCtDeclaredMethod(ctClass, name, methods.get(0).ctMethod().getParameterTypes());
+        if (combinedMethod == null)
+            return;
+
+        Set<String> methodNames = new LinkedHashSet<String>(Arrays.asList(name + "$original"));
+        for (MethodCopy method : methods) {
+            methodNames.add(method.ctMethod().getName());
+            if (!method.qualifier().isEmpty())
+                methodNames.add(method.qualifier() + "_" + name);
+        }
+
+        String contributorEvent = ContributorEvent.class.getName();
+        combinedMethod.instrument(new ExprEditor() {
+            @Override
+            public void edit(MethodCall call) throws CannotCompileException {
+                if (methodNames.contains(call.getMethodName()))
+                    call.replace("{ " + contributorEvent + " $event = new " + contributorEvent + "(); $event.begin(); $_ = $proceed($$); $event.end(\"" + key + "\", \""
+                            + getDeclaredName(ctClass, methods, call.getMethodName()) + "\"); }");
+            }
+        });
+    }
+
+    // Makes the combined method emit a CombinedMethodEvent: it is renamed and called by a new one, that emits the event
+    void addCombinedMethodEvent(CtClass ctClass, List<MethodCopy> methods, Combination combination) throws CannotCompileException, NotFoundException {
+        String name = methods.get(0).name();
+        String key = getEventKey(methods, combination);
+        CtMethod combinedMethod = getCtDeclaredMethod(ctClass, name, methods.get(0).ctMethod().getParameterTypes());
+        if (combinedMethod == null)
+            return;
+
+        String combinedMethodEvent = CombinedMethodEvent.class.getName();
+        String end = "$combinedMethodEvent.end(\"" + key + "\", $0.getClass(), " + methods.size() + "); ";
+        String result = combinedMethod.getReturnType() != CtClass.voidType ? combinedMethod.getReturnType().getName() + " $result = " : "";
+        combinedMethod.setName(name + "$combined");
+        CtMethod eventMethod = CtNewMethod.copy(combinedMethod, name, ctClass, null);
+        eventMethod.setBody("{ " + combinedMethodEvent + " $combinedMethodEvent = new " + combinedMethodEvent + "(); $combinedMethodEvent.begin(); "
+                + "try { " + result + name + "$combined($$); " + end + (result.isEmpty() ? "" : "return $result; ") + "} "
+                + "catch (Throwable $error) { " + end + "throw $error; } }");
+        ctClass.addMethod(eventMethod);
+    }
+
+    // The key of the combination in its events (e.g. isHardWorker$$or)
+    String getEventKey(List<MethodCopy> methods, Combination combination) {
+        String signature = methods.get(0).ctMethod().getSignature();
+        return methods.get(0).name() + "$" + signature.substring(1, signature.indexOf(")")) + "$" + combination.value();
+    }
+
+    // Lazy stubs are invokedynamic instructions, so they also require Java 7 class files
+    boolean useLazyStubs(CtClass ctClass) {
+        return ctClass.getClassFile2().getMajorVersion() >= ClassFile.JAVA_7;
+    }
+
+    // Adds a stub for each combined method, whose effective method is only computed when it is first called,
+    // and returns the methods of the combinations that must still be combined now (parallel, asynchronous and cacheable ones)
+    // The primary method of the class itself keeps its annotation, under a new name, so it is still found by the runtime engine
+    List<CombinationMethod> addLazyStubs(CtClass ctClass, List<CombinationMethod> methods) throws NotFoundException, CannotCompileException {
+        Map<String, List<CombinationMethod>> groupedMethods = methods.stream()
+                .collect(Collectors.groupingBy(CombinationMethod::key, LinkedHashMap::new, Collectors.toList()));
+        List<CombinationMethod> eagerMethods = new ArrayList<CombinationMethod>();
+
+        for (List<CombinationMethod> group : groupedMethods.values()) {
+            CombinationMethod primaryMethod = group.stream().filter(m -> m.qualifier().equals("")).findFirst().orElse(null);
+            Combination combination = group.stream().filter(m -> m.isDeclaredBy(ctClass) && m.qualifier().equals("")).findFirst().orElse(group.get(0))
+                    .combination();
+
+            // if there is no primary method, don't create a generic method
+            if (primaryMethod == null)
+                continue;
+
+            CtMethod template = primaryMethod.ctMethod();
+            if (isAsync(template.getReturnType()) || (combination.parallel() && group.size() >= combination.parallelThreshold()) || combination.cacheable()
+                    || combination.reorderable()) {
+                eagerMethods.addAll(group);
+                continue;
+            }
+
+            CtMethod ownMethod = getCtDeclaredMethod(ctClass, primaryMethod.name(), template.getParameterTypes());
+            if (ownMethod != null)
+                ownMethod.setName(primaryMethod.name() + "$original");
+
+            CtMethod stub = CtNewMethod.make(template.getReturnType(), primaryMethod.name(), template.getParameterTypes(), template.getExceptionTypes(), null,
+                    ctClass);
+            setInvokedynamicBody(ctClass, stub, "lazy", Collections.emptyList());
+            ctClass.addMethod(stub);
+        }
+
+        return eagerMethods;
+    }
+
+    // invokedynamic requires (at least) Java 7 class files
+    boolean useInvokedynamic(CtClass ctClass) {
+        return CombineTranslator.INDY && ctClass.getClassFile2().getMajorVersion() >= ClassFile.JAVA_7;
+    }
+
+    // The methods of a reorderable combination are called through a call site that is relinked as they are profiled (see ReorderableCombination)
+    boolean isReorderable(CtClass ctClass, Combination combination) {
+        return combination.reorderable() && (combination.value().equals("or") || combination.value().equals("and"))
+                && ctClass.getClassFile2().getMajorVersion() >= ClassFile.JAVA_7;
+    }
+
+    // Replaces the body of a combined method by an invokedynamic of CombinationBootstrap, given the combination and the methods to call
+    // The receiver and the arguments are passed as they are, and the call site returns the result of the combination
+    void setInvokedynamicBody(CtClass ctClass, CtMethod ctMethod, String operation, List<String> methodNames) throws NotFoundException, CannotCompileException {
+        ClassFile classFile = ctClass.getClassFile();
+        ConstPool constPool = classFile.getConstPool();
+        int bootstrap = constPool.addMethodHandleInfo(ConstPool.REF_invokeStatic,
+                constPool.addMethodrefInfo(constPool.addClassInfo(CombinationBootstrap.class.getName()), "bootstrap", BOOTSTRAP_DESCRIPTOR));
+        int[] arguments = new int[methodNames.size() + 1];
+        arguments[0] = constPool.addStringInfo(operation);
+        for (int i = 0; i < methodNames.size(); i++)
+            arguments[i + 1] = constPool.addStringInfo(methodNames.get(i));
+
+        // the bootstrap methods already used by the class (e.g. by lambdas) are kept
+        BootstrapMethodsAttribute attribute = (BootstrapMethodsAttribute)classFile.getAttribute(BootstrapMethodsAttribute.tag);
+        BootstrapMethodsAttribute.BootstrapMethod[] bootstrapMethods = attribute != null ? attribute.getMethods()
+                : new BootstrapMethodsAttribute.BootstrapMethod[0];
+        int bootstrapIndex = bootstrapMethods.length;
+        bootstrapMethods = Arrays.copyOf(bootstrapMethods, bootstrapIndex + 1);
+        bootstrapMethods[bootstrapIndex] = new BootstrapMethodsAttribute.BootstrapMethod(bootstrap, arguments);
+        classFile.addAttribute(new BootstrapMethodsAttribute(constPool, bootstrapMethods));
+
+        CtClass[] parameters = ctMethod.getParameterTypes();
+        Bytecode bytecode = new Bytecode(constPool);
+        bytecode.addAload(0);
+        bytecode.addLoadParameters(parameters, 1);
+        bytecode.addInvokedynamic(bootstrapIndex, ctMethod.getName(), "(" + Descriptor.of(ctClass) + ctMethod.getSignature().substring(1));
+        bytecode.addReturn(ctMethod.getReturnType());
+        bytecode.setMaxLocals(false, parameters, 0);
+
+        MethodInfo methodInfo = ctMethod.getMethodInfo();
+        methodInfo.setCodeAttribute(bytecode.toCodeAttribute());
+        try {
+            methodInfo.rebuildStackMapIf6(ctClass.getClassPool(), classFile);
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    // Adds a static field with the handles to the given methods (see Contributors) and returns its name
+    String addContributorsField(CtClass ctClass, String name, String descriptor, List<String> methodNames) throws CannotCompileException {
+        String fieldName = name + "$$contributors";
+        for (int i = 0; hasField(ctClass, fieldName); i++)
+            fieldName = name + "$$contributors$" + i;
+
+        String names = methodNames.stream().map(n -> "\"" + n + "\"").collect(Collectors.joining(", "));
+        CtField field = CtField.make("static final " + Contributors.class.getName() + " " + fieldName + ";", ctClass);
+        field.setModifiers(Modifier.PUBLIC | Modifier.STATIC | Modifier.FINAL);
+        ctClass.addField(field, CtField.Initializer.byExpr(Contributors.class.getName() + ".of(java.lang.invoke.MethodHandles.lookup(), \"" + descriptor
+                + "\", new String[] { " + names + " })"));
+        return fieldName;
+    }
+
+    boolean hasField(CtClass ctClass, String name) {
+        try {
+            ctClass.getDeclaredField(name);
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    // Gets the list of methods (and their names) to call for simple combination types and returns the new primary method
+    CtMethod getSimpleMethodNames(CtClass ctClass, List<MethodCopy> methods, Combination combination, List<String> outMethodNames, List<CtMethod> outMethods)
+            throws NotFoundException, CannotCompileException {
+
+        CtMethod template = methods.get(0).ctMethod();
+        String name = methods.get(0).name();
+
+        CtMethod ctMethod = getCtDeclaredMethod(ctClass, name, template.getParameterTypes());
+        boolean delegated = methods.get(0).isDeclaredBy(ctClass) && methods.get(0).delegated();
+        if (ctMethod != null) {
+            CtMethod originalMethod = ctMethod;
+            originalMethod.setName(name + "$original");
+            ctMethod = CtNewMethod.copy(originalMethod, name, ctClass, null);
+            // a delegated method is called through its alias, so the original is no longer needed
+            if (delegated) {
+                copyAnnotations(originalMethod, methods.get(0).ctMethod());
+                ctClass.removeMethod(originalMethod);
+            } else {
+                outMethodNames.add(name + "$original");
+                outMethods.add(originalMethod);
+            }
+        } else {
+            ctMethod = copyMethod(template, name, ctClass);
+        }
+
+        for (MethodCopy method : methods) {
+            if (method.isDeclaredBy(ctClass) && !method.delegated())
+                continue;
+
+            addCopy(ctClass, method);
+            outMethodNames.add(method.ctMethod().getName());
+            outMethods.add(method.ctMethod());
+        }
+
+        if (combination.reverseOrder()) { // @extension_6
+            Collections.reverse(outMethodNames);
+            Collections.reverse(outMethods);
+        }
+
+        return ctMethod;
+    }
+
+    // Stores and returns the names of all the methods to call with a given prefix (and the methods themselves on outMethods)
+    List<String> getPrefixedMethodNames(CtClass ctClass, String name, List<MethodCopy> methods, String prefix, List<CtMethod> outMethods)
+            throws CannotCompileException, NotFoundException {
+
+        List<String> methodNames = new ArrayList<String>();
+        for (MethodCopy method : methods) {
+            if (!method.isDeclaredBy(ctClass) || method.delegated()) {
+                methodNames.add(method.ctMethod().getName());
+                addCopy(ctClass, method);
+                outMethods.add(method.ctMethod());
+            } else {
+                methodNames.add(prefix + "_" + name);
+                outMethods.add(getCtDeclaredMethod(ctClass, prefix + "_" + name, method.ctMethod().getParameterTypes()));
+            }
+        }
+
+        return methodNames;
+    }
+
+    // Returns the first method that matches the specified qualifier (null if none)
+    MethodCopy getFirstMethodWithQualifier(List<MethodCopy> methods, String qualifier) {
+        return methods.stream().filter(m -> m.qualifier().equals(qualifier)).findFirst().orElse(null);
+    }
+
+    // Retrieve all the reachable methods from a given class, by the class precedence list (each type appears once, so no method is repeated)
+    List<CombinationMethod> retrieveCombinationMethods(CtClass ctClass) throws NotFoundException {
+        List<CombinationMethod> methods = new ArrayList<CombinationMethod>();
+        for (String type : getPrecedenceList(ctClass.getName()))
+            methods.addAll(this.declaredCombinationMethods.get(type));
+
+        return methods;
+    }
+
+    // The C3 linearization of a type (see Linearization), extended from the lists of its interfaces and its superclass (memoized for each type)
+    // The combination methods of every type in the list are retrieved (and memoized) along the way, from the index if the type is indexed
+    List<String> getPrecedenceList(String className) throws NotFoundException {
+        List<String> precedenceList = this.precedenceLists.get(className);
+        if (precedenceList != null)
+            return precedenceList;
+
+        CombinationIndex.IndexedType indexedType = this.index != null ? this.index.find(className) : null;
+        if (indexedType != null && !isIndexed(className, indexedType))
+            indexedType = null;
+
+        List<String> supertypes = new ArrayList<String>();
+        if (indexedType != null) {
+            getCombinationMethods(className, indexedType);
+            supertypes.addAll(indexedType.supertypes());
+        } else {
+            CtClass ctClass = this.pool.get(className);
+            getCombinationMethods(ctClass);
+            for (CtClass ctInterface : ctClass.getInterfaces())
+                supertypes.add(ctInterface.getName());
+
+            CtClass superclass = ctClass.getSuperclass();
+            if (superclass != null && !superclass.getName().equals("java.lang.Object"))
+                supertypes.add(superclass.getName());
+        }
+
+        List<List<String>> linearizations = new ArrayList<List<String>>();
+        for (String supertype : supertypes)
+            linearizations.add(getPrecedenceList(supertype));
+
+        precedenceList = Linearization.linearize(className, supertypes, linearizations);
+        this.precedenceLists.put(className, precedenceList);
+        return precedenceList;
+    }
+
+    // Checks the indexed type against the class file that is loaded (read, but not parsed), as the index may be older than the class
+    // A changed class is scanned instead, and the first one found is reported, as the index should be written again
+    boolean isIndexed(String className, CombinationIndex.IndexedType indexedType) {
+        URL url = this.pool.find(className);
+        if (url != null) {
+            try (InputStream in = url.openStream()) {
+                if (indexedType.isIndexed(in.readAllBytes()))
+                    return true;
+            } catch (IOException e) {
+                // the class is scanned, which reports the error if it persists
+            }
+        }
+
+        if (!this.staleIndex) {
+            this.staleIndex = true;
+            System.err.println("Warning: The combination index of [" + this.indexPath + "] is out of date (e.g. [" + className
+                    + "]), so the changed classes are scanned! Index them again with CombinationIndex");
+        }
+        return false;
+    }
+
+    // Finds all method of a class with a Combination annotation (the result, even if empty, is memoized for each type)
+    // Static methods are not combined, as they are the methods of generic functions (see GenericFunction.of)
+    List<CombinationMethod> getCombinationMethods(CtClass ctClass) {
+        List<CombinationMethod> methods = this.declaredCombinationMethods.get(ctClass.getName());
+        if (methods != null)
+            return methods;
+
+        methods = new ArrayList<CombinationMethod>();
+        // classes that never mention the annotation are skipped without looking at their methods
+        if (usesCombination(ctClass.getClassFile2().getConstPool())) {
+            for (CtMethod ctMethod : ctClass.getDeclaredMethods()) {
+                Combination combination = getCombination(ctMethod);
+                if (combination != null && !Modifier.isStatic(ctMethod.getModifiers())) {
+                    String fixedName = ctMethod.getName().split("\\$")[0];
+                    String qualifier = getQualifier(fixedName, combination);
+                    String keyName = qualifier.isEmpty() ? fixedName : fixedName.split("_", 2)[1];
+                    String key = getKey(fixedName, qualifier, ctMethod.getSignature(), combination);
+                    methods.add(new CombinationMethod(ctClass, ctMethod, combination, fixedName, keyName, qualifier, key));
+                }
+            }
+        }
+
+        methods = methods.isEmpty() ? Collections.emptyList() : methods;
+        this.declaredCombinationMethods.put(ctClass.getName(), methods);
+        return methods;
+    }
+
+    // The combination methods of an indexed type, as listed by the index (only the types that declare some are loaded, to get their methods)
+    List<CombinationMethod> getCombinationMethods(String className, CombinationIndex.IndexedType indexedType) throws NotFoundException {
+        List<CombinationMethod> methods = this.declaredCombinationMethods.get(className);
+        if (methods != null)
+            return methods;
+
+        methods = new ArrayList<CombinationMethod>();
+        CtClass ctClass = indexedType.methods().isEmpty() ? null : this.pool.get(className);
+        for (CombinationIndex.IndexedMethod method : indexedType.methods()) {
+            CtMethod ctMethod = ctClass.getMethod(method.name(), method.descriptor());
+            String fixedName = method.name().split("\\$")[0];
+            String keyName = method.qualifier().isEmpty() ? fixedName : fixedName.split("_", 2)[1];
+            methods.add(new CombinationMethod(ctClass, ctMethod, method.combination(), fixedName, keyName, method.qualifier(), method.key()));
+        }
+
+        methods = methods.isEmpty() ? Collections.emptyList() : methods;
+        this.declaredCombinationMethods.put(className, methods);
+        return methods;
+    }
+
+    // Qualifier of a standard combination method (e.g. before for before_print_name, empty for the primary methods and the other combinations)
+    static String getQualifier(String fixedName, Combination combination) {
+        if (combination.value().equals("standard")) {
+            String[] parts = fixedName.split("_", 2);
+            if (CombineTranslator.qualifiers.contains(parts[0]))
+                return parts[0];
+        }
+
+        return "";
+    }
+
+    // Methods are grouped by name (without the qualifier), parameter types and combination value
+    static String getKey(String fixedName, String qualifier, String descriptor, Combination combination) {
+        String keyName = qualifier.isEmpty() ? fixedName : fixedName.split("_", 2)[1];
+        String signature = descriptor.substring(1, descriptor.indexOf(")")); // @extension_7
+        return keyName + "$" + signature + "$" + combination.value();
+    }
+
+    // Reads the Combination annotation of a method straight from its attributes (null if none)
+    // No annotation proxies are created, so the annotation class does not even need to be loaded
+    Combination getCombination(CtMethod ctMethod) {
+        AnnotationsAttribute attribute = (AnnotationsAttribute)ctMethod.getMethodInfo2().getAttribute(AnnotationsAttribute.visibleTag);
+        if (attribute == null)
+            return null;
+
+        Annotation annotation = attribute.getAnnotation(Combination.class.getName());
+        return annotation != null ? new BytecodeCombination(annotation) : null;
+    }
+
+    // Checks the constant pool of a class for the annotation descriptor
+    static boolean usesCombination(ConstPool constPool) {
+        for (int i = 1; i < constPool.getSize(); i++)
+            if (constPool.getTag(i) == ConstPool.CONST_Utf8 && constPool.getUtf8Info(i).equals(COMBINATION_DESCRIPTOR))
+                return true;
+
+        return false;
+    }
+
+    // Copies a reachable method to the class being combined and stores it on the groupedMethods list
+    void copyCombinationMethod(CtClass originalClass, CombinationMethod method, Map<String, List<MethodCopy>> groupedMethods)
+            throws CannotCompileException, NotFoundException {
+
+        if (CombineTranslator.DELEGATE && canDelegate(originalClass, method)) {
+            CtMethod alias = getAlias(method);
+            if (alias != null) {
+                MethodCopy delegatedMethod = new MethodCopy(method.ctClass(), alias, method.combination(), method.name(), method.qualifier());
+                delegatedMethod.setDelegated(true);
+                addToGroupedMethods(groupedMethods, delegatedMethod, method.key());
+                return;
+            }
+        }
+
+        CtMethod newMethod = copyMethod(method.ctMethod(), getCopyName(method), originalClass);
+        addToGroupedMethods(groupedMethods, new MethodCopy(method.ctClass(), newMethod, method.combination(), method.name(), method.qualifier()), method.key());
+    }
+
+    // Copies a method to another class: its invokedynamic instructions (e.g. string concatenations and lambdas) still refer to the bootstrap
+    // methods of the class that declares it, so those are added to the class and the instructions of the copy changed to refer to them
+    CtMethod copyMethod(CtMethod ctMethod, String name, CtClass ctClass) throws CannotCompileException {
+        CtMethod newMethod = CtNewMethod.copy(ctMethod, name, ctClass, null);
+        CodeAttribute code = newMethod.getMethodInfo2().getCodeAttribute();
+        if (code == null || ctMethod.getDeclaringClass().getName().equals(ctClass.getName()))
+            return newMethod;
+
+        ClassFile sourceClassFile = ctMethod.getDeclaringClass().getClassFile2();
+        ConstPool constPool = code.getConstPool();
+        Map<Integer, Integer> bootstrapIndexes = new HashMap<Integer, Integer>();
+        try {
+            CodeIterator iterator = code.iterator();
+            while (iterator.hasNext()) {
+                int index = iterator.next();
+                if (iterator.byteAt(index) != Opcode.INVOKEDYNAMIC)
+                    continue;
+
+                int invokedynamic = iterator.u16bitAt(index + 1);
+                int sourceIndex = constPool.getInvokeDynamicBootstrap(invokedynamic);
+                Integer bootstrapIndex = bootstrapIndexes.get(sourceIndex);
+                if (bootstrapIndex == null) {
+                    bootstrapIndex = addBootstrapMethod(ctClass.getClassFile(), sourceClassFile, sourceIndex);
+                    bootstrapIndexes.put(sourceIndex, bootstrapIndex);
+                }
+                iterator.write16bit(constPool.addInvokeDynamicInfo(bootstrapIndex, constPool.getInvokeDynamicNameAndType(invokedynamic)), index + 1);
+            }
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+
+        return newMethod;
+    }
+
+    // Adds a bootstrap method of another class (with its arguments) to the class and returns its index
+    int addBootstrapMethod(ClassFile classFile, ClassFile sourceClassFile, int sourceIndex) {
+        ConstPool constPool = classFile.getConstPool();
+        ConstPool sourceConstPool = sourceClassFile.getConstPool();
+        BootstrapMethodsAttribute.BootstrapMethod source = ((BootstrapMethodsAttribute)sourceClassFile.getAttribute(BootstrapMethodsAttribute.tag))
+                .getMethods()[sourceIndex];
+        int[] arguments = new int[source.arguments.length];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = sourceConstPool.copy(source.arguments[i], constPool, null);
+
+        BootstrapMethodsAttribute attribute = (BootstrapMethodsAttribute)classFile.getAttribute(BootstrapMethodsAttribute.tag);
+        BootstrapMethodsAttribute.BootstrapMethod[] bootstrapMethods = attribute != null ? attribute.getMethods()
+                : new BootstrapMethodsAttribute.BootstrapMethod[0];
+        int bootstrapIndex = bootstrapMethods.length;
+        bootstrapMethods = Arrays.copyOf(bootstrapMethods, bootstrapIndex + 1);
+        bootstrapMethods[bootstrapIndex] = new BootstrapMethodsAttribute.BootstrapMethod(sourceConstPool.copy(source.methodRef, constPool, null), arguments);
+        classFile.addAttribute(new BootstrapMethodsAttribute(constPool, bootstrapMethods));
+        return bootstrapIndex;
+    }
+
+    String getCopyName(CombinationMethod method) {
+        return method.fixedName() + "$$" + method.ctClass().getName().replace(".", "$"); // @extension_4
+    }
+
+    // Returns the alias of a method in the type that declares it, creating it if needed (null if that type can no longer change)
+    // Every type gets a single alias per method (e.g. one per interface default method, shared by all the implementing classes),
+    // and being unique it is never overridden, so subclasses can call it instead of copying the method
+    CtMethod getAlias(CombinationMethod method) throws CannotCompileException, NotFoundException {
+        CtClass declaringClass = method.ctClass().getClassPool().get(method.ctClass().getName());
+        String aliasName = getCopyName(method);
+        CtMethod alias = getCtDeclaredMethod(declaringClass, aliasName, method.ctMethod().getParameterTypes());
+        if (alias == null) {
+            if (declaringClass.isFrozen())
+                return null;
+
+            alias = CtNewMethod.copy(method.ctMethod(), aliasName, declaringClass, null);
+            declaringClass.addMethod(alias);
+        }
+
+        return alias;
+    }
+
+    // The alias takes the place of a removed original method, so it gets its annotations (e.g. its @Combination, read by Combinations)
+    void copyAnnotations(CtMethod originalMethod, CtMethod alias) {
+        AnnotationsAttribute attribute = (AnnotationsAttribute)originalMethod.getMethodInfo2().getAttribute(AnnotationsAttribute.visibleTag);
+        if (attribute != null)
+            alias.getMethodInfo().addAttribute(attribute.copy(alias.getMethodInfo().getConstPool(), null));
+    }
+
+    // The alias has the modifiers of the original method, so it must be accessible from the class being combined
+    boolean canDelegate(CtClass originalClass, CombinationMethod method) {
+        int modifiers = method.ctMethod().getModifiers();
+        if (Modifier.isStatic(modifiers))
+            return false;
+        if (Modifier.isPrivate(modifiers))
+            return method.isDeclaredBy(originalClass);
+        if (Modifier.isPublic(modifiers) || Modifier.isProtected(modifiers))
+            return true;
+
+        return method.ctClass().getPackageName().equals(originalClass.getPackageName());
+    }
+
+    // Adds a copied method to the class being combined (delegated methods are called where they are declared)
+    void addCopy(CtClass ctClass, MethodCopy method) throws CannotCompileException {
+        if (!method.delegated()) {
+            ctClass.addMethod(method.ctMethod());
+            if (METRICS != null)
+                METRICS.methodCopied();
+        }
+    }
+
+    // Put method its list of methods to be combined)
+    void addToGroupedMethods(Map<String, List<MethodCopy>> groupedMethods, MethodCopy method, String key) {
+        groupedMethods.computeIfAbsent(key, k -> new ArrayList<MethodCopy>()).add(method);
+    }
+
+    // Returns a method declared in a class (null if none)
+    CtMethod getCtDeclaredMethod(CtClass ctClass, String name, CtClass[] parameters) {
+        try {
+            return ctClass.getDeclaredMethod(name, parameters);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    // Combination annotation values, as read from the annotation attribute of a method
+    public static class BytecodeCombination implements Combination {
+        private String value;
+        private boolean reverseOrder;
+        private boolean parallel;
+        private int parallelThreshold;
+        private long timeout;
+        private boolean cacheable;
+        private int cacheSize;
+        private long cacheTtl;
+        private boolean reorderable;
+
+        public BytecodeCombination(String value, boolean reverseOrder, boolean parallel, int parallelThreshold, long timeout, boolean cacheable, int cacheSize,
+                long cacheTtl, boolean reorderable) {
+            this.value = value;
+            this.reverseOrder = reverseOrder;
+            this.parallel = parallel;
+            this.parallelThreshold = parallelThreshold;
+            this.timeout = timeout;
+            this.cacheable = cacheable;
+            this.cacheSize = cacheSize;
+            this.cacheTtl = cacheTtl;
+            this.reorderable = reorderable;
+        }
+
+        public BytecodeCombination(Annotation annotation) {
+            this.value = ((StringMemberValue)annotation.getMemberValue("value")).getValue();
+            this.reverseOrder = getBoolean(annotation, "reverseOrder");
+            this.parallel = getBoolean(annotation, "parallel");
+            this.parallelThreshold = getInteger(annotation, "parallelThreshold");
+            this.timeout = getLong(annotation, "timeout");
+            this.cacheable = getBoolean(annotation, "cacheable");
+            this.cacheSize = getInteger(annotation, "cacheSize");
+            this.cacheTtl = getLong(annotation, "cacheTtl");
+            this.reorderable = getBoolean(annotation, "reorderable");
+        }
+
+        // The values missing from the class file are the defaults declared by Combination
+        private static Object getDefaultValue(String name) {
+            try {
+                return Combination.class.getMethod(name).getDefaultValue();
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException("Error: Combination has no element [" + name + "]", e);
+            }
+        }
+
+        private static boolean getBoolean(Annotation annotation, String name) {
+            BooleanMemberValue memberValue = (BooleanMemberValue)annotation.getMemberValue(name);
+            return memberValue != null ? memberValue.getValue() : (Boolean)getDefaultValue(name);
+        }
+
+        private static int getInteger(Annotation annotation, String name) {
+            IntegerMemberValue memberValue = (IntegerMemberValue)annotation.getMemberValue(name);
+            return memberValue != null ? memberValue.getValue() : (Integer)getDefaultValue(name);
+        }
+
+        private static long getLong(Annotation annotation, String name) {
+            LongMemberValue memberValue = (LongMemberValue)annotation.getMemberValue(name);
+            return memberValue != null ? memberValue.getValue() : (Long)getDefaultValue(name);
+        }
+
+        @Override
+        public String value() {
+            return this.value;
+        }
+
+        @Override
+        public boolean reverseOrder() {
+            return this.reverseOrder;
+        }
+
+        @Override
+        public boolean parallel() {
+            return this.parallel;
+        }
+
+        @Override
+        public int parallelThreshold() {
+            return this.parallelThreshold;
+        }
+
+        @Override
+        public long timeout() {
+            return this.timeout;
+        }
+
+        @Override
+        public boolean cacheable() {
+            return this.cacheable;
+        }
+
+        @Override
+        public int cacheSize() {
+            return this.cacheSize;
+        }
+
+        @Override
+        public long cacheTtl() {
+            return this.cacheTtl;
+        }
+
+        @Override
+        public boolean reorderable() {
+            return this.reorderable;
+        }
+
+        @Override
+        public Class<? extends java.lang.annotation.Annotation> annotationType() {
+            return Combination.class;
+        }
+
+        // Equal to any Combination with the same values, as annotations are (including the ones created by the JVM)
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Combination))
+                return false;
+
+            Combination combination = (Combination)other;
+            return this.value.equals(combination.value()) && this.reverseOrder == combination.reverseOrder() && this.parallel == combination.parallel()
+                    && this.parallelThreshold == combination.parallelThreshold() && this.timeout == combination.timeout()
+                    && this.cacheable == combination.cacheable() && this.cacheSize == combination.cacheSize() && this.cacheTtl == combination.cacheTtl()
+                    && this.reorderable == combination.reorderable();
+        }
+
+        // The sum of (127 * the hash code of the name) ^ the hash code of the value of each element (see java.lang.annotation.Annotation)
+        @Override
+        public int hashCode() {
+            return (127 * "value".hashCode() ^ this.value.hashCode()) + (127 * "reverseOrder".hashCode() ^ Boolean.hashCode(this.reverseOrder))
+                    + (127 * "parallel".hashCode() ^ Boolean.hashCode(this.parallel))
+                    + (127 * "parallelThreshold".hashCode() ^ Integer.hashCode(this.parallelThreshold))
+                    + (127 * "timeout".hashCode() ^ Long.hashCode(this.timeout)) + (127 * "cacheable".hashCode() ^ Boolean.hashCode(this.cacheable))
+                    + (127 * "cacheSize".hashCode() ^ Integer.hashCode(this.cacheSize)) + (127 * "cacheTtl".hashCode() ^ Long.hashCode(this.cacheTtl))
+                    + (127 * "reorderable".hashCode() ^ Boolean.hashCode(this.reorderable));
+        }
+
+        @Override
+        public String toString() {
+            return "@" + Combination.class.getName() + "(value=\"" + this.value + "\", reverseOrder=" + this.reverseOrder + ", parallel=" + this.parallel
+                    + ", parallelThreshold=" + this.parallelThreshold + ", timeout=" + this.timeout + ", cacheable=" + this.cacheable + ", cacheSize="
+                    + this.cacheSize + ", cacheTtl=" + this.cacheTtl + ", reorderable=" + this.reorderable + ")";
+        }
+    }
+
+    // Stores a method with a Combination annotation, as found when scanning the type that declares it
+    public static class CombinationMethod {
+        private CtClass ctClass;
+        private CtMethod ctMethod;
+        private Combination combination;
+        private String fixedName;
+        private String name;
+        private String qualifier;
+        private String key;
+
+        public CombinationMethod(CtClass ctClass, CtMethod ctMethod, Combination combination, String fixedName, String name, String qualifier, String key) {
+            this.ctClass = ctClass;
+            this.ctMethod = ctMethod;
+            this.combination = combination;
+            this.fixedName = fixedName;
+            this.name = name;
+            this.qualifier = qualifier;
+            this.key = key;
+        }
+
+        public CtClass ctClass() {
+            return this.ctClass;
+        }
+
+        public CtMethod ctMethod() {
+            return this.ctMethod;
+        }
+
+        public Combination combination() {
+            return this.combination;
+        }
+
+        public String fixedName() {
+            return this.fixedName;
+        }
+
+        public String name() {
+            return this.name;
+        }
+
+        public String qualifier() {
+            return this.qualifier;
+        }
+
+        public String key() {
+            return this.key;
+        }
+
+        public boolean isDeclaredBy(CtClass ctClass) {
+            return this.ctClass.getName().equals(ctClass.getName());
+        }
+    }
+
+    // Stores a method to be copied from class/interface A to class/interface B
+    public static class MethodCopy {
+        private CtClass ctClass;
+        private CtMethod ctMethod;
+        private Combination combination;
+        private String name;
+        private String qualifier;
+        private boolean delegated;
+
+        public MethodCopy() {}
+
+        public MethodCopy(CtClass ctClass, CtMethod ctMethod, Combination combination, String name) {
+            this.ctClass = ctClass;
+            this.ctMethod = ctMethod;
+            this.combination = combination;
+            this.name = name;
+        }
+
+        public MethodCopy(CtClass ctClass, CtMethod ctMethod, Combination combination, String name, String qualifier) {
+            this(ctClass, ctMethod, combination, name);
+            this.qualifier = qualifier;
+        }
+
+        public CtClass ctClass() {
+            return this.ctClass;
+        }
+
+        public CtMethod ctMethod() {
+            return this.ctMethod;
+        }
+
+        public Combination combination() {
+            return this.combination;
+        }
+
+        public String name() {
+            return this.name;
+        }
+
+        public String qualifier() {
+            return this.qualifier;
+        }
+
+        public boolean isDeclaredBy(CtClass ctClass) {
+            return this.ctClass.getName().equals(ctClass.getName());
+        }
+
+        // A delegated method is not copied: its ctMethod is the alias in the class/interface that declares it
+        public boolean delegated() {
+            return this.delegated;
+        }
+
+        public void setDelegated(boolean delegated) {
+            this.delegated = delegated;
+        }
+
+        private String toStringCombination() {
+            return "{value=\'" + this.combination.value() + "\', reverseOrder=" + this.combination.reverseOrder() + "}";
+        }
+
+        @Override
+        public String toString() {
+            return "MethodCopy{method=\"" + this.ctMethod.getLongName() + "\", class=\"" + this.ctClass.getName() + "\", combination=\"" + toStringCombination()
+                    + "\", qualifier=\"" + this.qualifier + "\"}";
+        }
+    }
+}
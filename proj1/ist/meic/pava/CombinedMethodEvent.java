@@ -0,0 +1,37 @@
+package ist.meic.pava;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Call of a combined method, emitted by the methods woven with the ist.meic.pava.jfr option (for cacheable combinations,
+// also when the result is found in the cache), disabled by default, even when recording (see README)
+@Name("ist.meic.pava.CombinedMethod")
+@Label("Combined Method")
+@Category("Method Combination")
+@Description("Call of a combined method")
+@Enabled(false)
+@StackTrace(false)
+public class CombinedMethodEvent extends Event {
+    @Label("Combination")
+    String key;
+
+    @Label("Receiver Class")
+    Class<?> receiverClass;
+
+    @Label("Contributors")
+    int contributors;
+
+    public void end(String key, Class<?> receiverClass, int contributors) {
+        if (shouldCommit()) {
+            this.key = key;
+            this.receiverClass = receiverClass;
+            this.contributors = contributors;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ist.meic.pava;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Call of one of the methods of a combined method, emitted by the methods woven with the ist.meic.pava.jfr option
+// (only for the methods called directly, i.e. not in parallel, asynchronous, indy or lazy combinations, and for cacheable ones only on cache misses)
+@Name("ist.meic.pava.Contributor")
+@Label("Combination Contributor")
+@Category("Method Combination")
+@Description("Call of one of the methods of a combined method")
+@Enabled(false)
+@StackTrace(false)
+public class ContributorEvent extends Event {
+    @Label("Combination")
+    String key;
+
+    @Label("Method")
+    String method;
+
+    public void end(String key, String method) {
+        if (shouldCommit()) {
+            this.key = key;
+            this.method = method;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ist.meic.pava;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+// Handles to the methods that take part in a combination, as used by the code generated by the CombineTranslator
+// when the combined methods are not called directly (e.g. parallel and asynchronous combinations)
+public final class Contributors {
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private final String[] names;
+    private final MethodHandle[] handles;
+    private final Class<?> returnType;
+
+    private Contributors(String[] names, MethodHandle[] handles, Class<?> returnType) {
+        this.names = names;
+        this.handles = handles;
+        this.returnType = returnType;
+    }
+
+    // Finds the methods with the given names and parameters (the return type in the descriptor is ignored, as e.g. the before
+    // and after methods of a standard combination may return void) on the class of the lookup or its supertypes
+    public static Contributors of(MethodHandles.Lookup lookup, String descriptor, String[] names) {
+        Class<?> ownerClass = lookup.lookupClass();
+        Class<?>[] parameterTypes = MethodType.fromMethodDescriptorString(descriptor, ownerClass.getClassLoader()).parameterArray();
+        MethodHandle[] handles = new MethodHandle[names.length];
+        Class<?> returnType = void.class;
+
+        try {
+            for (int i = 0; i < names.length; i++) {
+                Method method = findMethod(ownerClass, names[i], parameterTypes);
+                if (method == null)
+                    throw new NoSuchMethodException(ownerClass.getName() + "." + names[i]);
+                if (i == 0)
+                    returnType = method.getReturnType();
+                handles[i] = lookup.unreflect(method).asSpreader(Object[].class, parameterTypes.length).asType(INVOKER_TYPE);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Error: Could not find the combined methods of [" + ownerClass.getName() + "]", e);
+        }
+
+        return new Contributors(names, handles, returnType);
+    }
+
+    static Method findMethod(Class<?> type, String name, Class<?>[] parameterTypes) {
+        if (type == null)
+            return null;
+
+        for (Method method : type.getDeclaredMethods())
+            if (method.getName().equals(name) && Arrays.equals(method.getParameterTypes(), parameterTypes))
+                return method;
+
+        Method method = findMethod(type.getSuperclass(), name, parameterTypes);
+        for (int i = 0; method == null && i < type.getInterfaces().length; i++)
+            method = findMethod(type.getInterfaces()[i], name, parameterTypes);
+
+        return method;
+    }
+
+    public int size() {
+        return this.handles.length;
+    }
+
+    public String name(int index) {
+        return this.names[index];
+    }
+
+    public Class<?> returnType() {
+        return this.returnType;
+    }
+
+    // Calls a method with the given (boxed) arguments and returns its (boxed) result
+    public Object invoke(int index, Object receiver, Object[] args) throws Throwable {
+        return (Object)this.handles[index].invokeExact(receiver, args);
+    }
+}
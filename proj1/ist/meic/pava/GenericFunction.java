@@ -0,0 +1,302 @@
+package ist.meic.pava;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// CLOS-style generic function (as in proj2): the applicable methods are chosen by the runtime types of all the arguments,
+// sorted from the most to the least specific and combined as by @Combination ('standard', 'or', 'and', 'sum', 'prod' and 'collect')
+// The effective method of each tuple of argument types is computed once and kept (the last two are also kept inline,
+// so monomorphic and bimorphic calls do not even look them up)
+public final class GenericFunction {
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+    private static final List<String> QUALIFIERS = Arrays.asList("before", "after", "");
+
+    // Method to call, given all the (boxed) arguments
+    public interface Body {
+        Object apply(Object... args) throws Throwable;
+    }
+
+    private final String name;
+    private final String combination;
+    private final int arity;
+    private int[] parametersOrder;
+    private Class<?> resultType = Object.class;
+    private List<SpecificMethod> methods = new CopyOnWriteArrayList<SpecificMethod>();
+
+    // Effective methods for each tuple of argument types
+    private Map<List<Class<?>>, EffectiveMethod> effectiveMethods = new ConcurrentHashMap<List<Class<?>>, EffectiveMethod>();
+
+    // Inline cache with the effective methods of the last two tuples of argument types
+    private volatile CacheEntry first;
+    private volatile CacheEntry second;
+
+    public GenericFunction(String name, String combination, int arity) {
+        if (!combination.equals("standard") && !Arrays.asList("or", "and", "sum", "prod", "collect").contains(combination))
+            throw new RuntimeException("Error: Invalid combination value [" + combination + "]! Values: ['or', 'and', 'sum', 'prod', 'collect' and 'standard']");
+
+        this.name = name;
+        this.combination = combination;
+        this.arity = arity;
+        this.parametersOrder = new int[arity];
+        for (int i = 0; i < arity; i++)
+            this.parametersOrder[i] = i;
+    }
+
+    // Builds a generic function with the static methods of a class for a combination (e.g. before_collide, collide and after_collide)
+    public static GenericFunction of(MethodHandles.Lookup lookup, Class<?> type, String name) {
+        GenericFunction genericFunction = null;
+        for (Method method : type.getDeclaredMethods()) {
+            Combination combination = method.getAnnotation(Combination.class);
+            if (combination == null || !Modifier.isStatic(method.getModifiers()))
+                continue;
+
+            String[] parts = method.getName().split("_", 2);
+            String qualifier = parts.length == 2 && combination.value().equals("standard") && QUALIFIERS.contains(parts[0]) ? parts[0] : "";
+            if (!(qualifier.isEmpty() ? method.getName() : parts[1]).equals(name))
+                continue;
+
+            if (genericFunction == null)
+                genericFunction = new GenericFunction(name, combination.value(), method.getParameterCount());
+            try {
+                genericFunction.addMethod(qualifier, lookup.unreflect(method));
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Error: Could not access the method [" + type.getName() + "." + method.getName() + "]", e);
+            }
+        }
+
+        if (genericFunction == null)
+            throw new RuntimeException("Error: No methods for the generic function [" + name + "] on [" + type.getName() + "]");
+        return genericFunction;
+    }
+
+    // Sets the precedence of the arguments when sorting the methods (by default, from left to right)
+    public GenericFunction precedence(int... parametersOrder) {
+        if (parametersOrder.length != this.arity)
+            throw new RuntimeException("Error: The precedence order must contain each parameter of [" + this.name + "] once");
+
+        int[] sorted = parametersOrder.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++)
+            if (sorted[i] != i)
+                throw new RuntimeException("Error: The precedence order must contain each parameter of [" + this.name + "] once");
+
+        this.parametersOrder = parametersOrder.clone();
+        clearCache();
+        return this;
+    }
+
+    // Adds a method ("before", "after" or "" for primary methods), specialized on the parameter types of the handle
+    public GenericFunction addMethod(String qualifier, MethodHandle method) {
+        MethodType type = method.type();
+        if (type.parameterCount() != this.arity)
+            throw new RuntimeException("Error: The method does not match the number of arguments of [" + this.name + "]");
+
+        if (qualifier.isEmpty() && type.returnType() != void.class)
+            this.resultType = type.returnType();
+        return addMethod(new SpecificMethod(qualifier, type.parameterArray(), method.asSpreader(Object[].class, this.arity).asType(INVOKER_TYPE)));
+    }
+
+    public GenericFunction addMethod(String qualifier, Body body, Class<?>... parameterTypes) {
+        if (parameterTypes.length != this.arity)
+            throw new RuntimeException("Error: The method does not match the number of arguments of [" + this.name + "]");
+
+        try {
+            MethodHandle apply = MethodHandles.publicLookup().findVirtual(Body.class, "apply", INVOKER_TYPE).bindTo(body);
+            return addMethod(new SpecificMethod(qualifier, parameterTypes.clone(), apply));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    GenericFunction addMethod(SpecificMethod method) {
+        if (!QUALIFIERS.contains(method.qualifier) || (!method.qualifier.isEmpty() && !this.combination.equals("standard")))
+            throw new RuntimeException("Error: Invalid qualifier [" + method.qualifier + "] for a [" + this.combination + "] combination");
+
+        this.methods.removeIf(m -> m.qualifier.equals(method.qualifier) && Arrays.equals(m.parameterTypes, method.parameterTypes));
+        this.methods.add(method);
+        clearCache();
+        return this;
+    }
+
+    // Discards all the effective methods (they are computed again on their next call)
+    public void clearCache() {
+        this.first = null;
+        this.second = null;
+        this.effectiveMethods.clear();
+    }
+
+    public Object call(Object... args) throws Throwable {
+        if (args.length != this.arity)
+            throw new RuntimeException("Error: No applicable method [" + this.name + "] for the arguments " + Arrays.toString(args));
+
+        return getEffectiveMethod(args).invoke(args);
+    }
+
+    EffectiveMethod getEffectiveMethod(Object[] args) {
+        CacheEntry entry = this.first;
+        if (entry != null && entry.matches(args))
+            return entry.method;
+        entry = this.second;
+        if (entry != null && entry.matches(args))
+            return entry.method;
+
+        Class<?>[] types = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++)
+            types[i] = args[i] != null ? args[i].getClass() : null;
+
+        EffectiveMethod method = this.effectiveMethods.computeIfAbsent(Arrays.asList(types), t -> combineMethods(types, args));
+        this.second = this.first;
+        this.first = new CacheEntry(types, method);
+        return method;
+    }
+
+    // Finds the applicable methods for the argument types and sorts them from the most to the least specific
+    EffectiveMethod combineMethods(Class<?>[] types, Object[] args) {
+        List<List<Class<?>>> precedenceLists = new ArrayList<List<Class<?>>>();
+        for (Class<?> type : types)
+            precedenceLists.add(type != null ? getPrecedenceList(type) : null);
+
+        List<SpecificMethod> applicable = new ArrayList<SpecificMethod>();
+        for (SpecificMethod method : this.methods)
+            if (method.isApplicable(types, precedenceLists))
+                applicable.add(method);
+
+        if (applicable.isEmpty())
+            throw new RuntimeException("Error: No applicable method [" + this.name + "] for the arguments " + Arrays.toString(args));
+
+        applicable.sort(Comparator.comparing(m -> m.getSpecificity(precedenceLists, this.parametersOrder), Arrays::compare));
+        return new EffectiveMethod(this.combination, this.resultType, applicable);
+    }
+
+    // Classes from the most to the least specific: the class precedence list of the class (its C3 linearization, as for @Combination)
+    // and then Object
+    static List<Class<?>> getPrecedenceList(Class<?> type) {
+        List<Class<?>> precedenceList = new ArrayList<Class<?>>(Combinations.precedenceLists.get(type));
+        precedenceList.remove(Object.class);
+        precedenceList.add(Object.class);
+        return precedenceList;
+    }
+
+    static Class<?> wrap(Class<?> type) {
+        return type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+    }
+
+    static class SpecificMethod {
+        private String qualifier;
+        private Class<?>[] parameterTypes;
+        private MethodHandle invoker;
+
+        SpecificMethod(String qualifier, Class<?>[] parameterTypes, MethodHandle invoker) {
+            this.qualifier = qualifier;
+            this.parameterTypes = parameterTypes;
+            this.invoker = invoker;
+        }
+
+        boolean isApplicable(Class<?>[] types, List<List<Class<?>>> precedenceLists) {
+            for (int i = 0; i < types.length; i++)
+                if (types[i] == null ? this.parameterTypes[i].isPrimitive() : !precedenceLists.get(i).contains(wrap(this.parameterTypes[i])))
+                    return false;
+
+            return true;
+        }
+
+        // Position of each parameter type in the precedence list of the argument (in the order of precedence of the parameters)
+        int[] getSpecificity(List<List<Class<?>>> precedenceLists, int[] parametersOrder) {
+            int[] specificity = new int[parametersOrder.length];
+            for (int i = 0; i < parametersOrder.length; i++) {
+                List<Class<?>> precedenceList = precedenceLists.get(parametersOrder[i]);
+                specificity[i] = precedenceList != null ? precedenceList.indexOf(wrap(this.parameterTypes[parametersOrder[i]])) : 0;
+            }
+
+            return specificity;
+        }
+
+        Object invoke(Object[] args) throws Throwable {
+            return (Object)this.invoker.invokeExact(args);
+        }
+    }
+
+    static class EffectiveMethod {
+        private String combination;
+        private Class<?> resultType;
+        private SpecificMethod[] befores;
+        private SpecificMethod primary;
+        private SpecificMethod[] afters;
+        private SpecificMethod[] methods;
+
+        EffectiveMethod(String combination, Class<?> resultType, List<SpecificMethod> methods) {
+            this.combination = combination;
+            this.resultType = resultType;
+            this.methods = methods.toArray(new SpecificMethod[0]);
+
+            List<SpecificMethod> afters = new ArrayList<SpecificMethod>();
+            List<SpecificMethod> befores = new ArrayList<SpecificMethod>();
+            for (SpecificMethod method : methods) {
+                if (method.qualifier.equals("before"))
+                    befores.add(method);
+                else if (method.qualifier.equals("after"))
+                    afters.add(0, method);
+                else if (this.primary == null)
+                    this.primary = method;
+            }
+
+            this.befores = befores.toArray(new SpecificMethod[0]);
+            this.afters = afters.toArray(new SpecificMethod[0]);
+        }
+
+        Object invoke(Object[] args) throws Throwable {
+            switch (this.combination) {
+            case "standard":
+                for (SpecificMethod before : this.befores)
+                    before.invoke(args);
+                Object result = this.primary != null ? this.primary.invoke(args) : null;
+                for (SpecificMethod after : this.afters)
+                    after.invoke(args);
+                return result;
+            case "or":
+                for (SpecificMethod method : this.methods)
+                    if ((Boolean)method.invoke(args))
+                        return true;
+                return false;
+            case "and":
+                for (SpecificMethod method : this.methods)
+                    if (!(Boolean)method.invoke(args))
+                        return false;
+                return true;
+            default:
+                Object[] results = new Object[this.methods.length];
+                for (int i = 0; i < results.length; i++)
+                    results[i] = this.methods[i].invoke(args);
+                return ParallelCombination.reduce(this.combination, this.resultType, results);
+            }
+        }
+    }
+
+    static class CacheEntry {
+        private Class<?>[] types;
+        private EffectiveMethod method;
+
+        CacheEntry(Class<?>[] types, EffectiveMethod method) {
+            this.types = types;
+            this.method = method;
+        }
+
+        boolean matches(Object[] args) {
+            for (int i = 0; i < args.length; i++)
+                if ((args[i] != null ? args[i].getClass() : null) != this.types[i])
+                    return false;
+
+            return true;
+        }
+    }
+}
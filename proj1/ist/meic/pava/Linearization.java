@@ -0,0 +1,63 @@
+package ist.meic.pava;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// C3 linearization (the class precedence list of CLOS) of a type and its supertypes: the order in which the combinations call their methods
+// Each type is linearized once, from the (already linearized) lists of its direct supertypes, its interfaces and then its superclass
+final class Linearization {
+    private Linearization() {}
+
+    // The type followed by the merge of the linearizations of its direct supertypes and the list of those supertypes: the next type is the
+    // first head of those lists that is not in the tail of any of them. Java allows hierarchies that have no such order (e.g. a class that
+    // implements an interface already implemented by its superclass), and then the order of the direct supertypes is the one relaxed, so
+    // every type still comes before its own supertypes (and if even that fails, the head of the first list is taken, as a depth-first walk would)
+    static <T> List<T> linearize(T type, List<T> supertypes, List<List<T>> linearizations) {
+        List<List<T>> lists = new ArrayList<List<T>>(linearizations);
+        lists.add(supertypes);
+
+        // the lists are consumed from their heads, and each type counts the linearizations that still have it after their heads
+        int[] heads = new int[lists.size()];
+        Map<T, Integer> tails = new HashMap<T, Integer>();
+        for (List<T> list : linearizations)
+            for (int i = 1; i < list.size(); i++)
+                tails.merge(list.get(i), 1, Integer::sum);
+
+        List<T> linearization = new ArrayList<T>();
+        Set<T> added = new HashSet<T>();
+        linearization.add(type);
+        while (true) {
+            T first = null;
+            T monotonic = null;
+            T next = null;
+            for (int i = 0; i < lists.size() && next == null; i++) {
+                if (heads[i] < lists.get(i).size()) {
+                    T head = lists.get(i).get(heads[i]);
+                    first = first != null ? first : head;
+                    if (tails.getOrDefault(head, 0) == 0) {
+                        monotonic = monotonic != null ? monotonic : head;
+                        if (supertypes.indexOf(head) <= heads[lists.size() - 1])
+                            next = head;
+                    }
+                }
+            }
+
+            if (first == null)
+                return linearization;
+
+            next = next != null ? next : monotonic != null ? monotonic : first;
+            linearization.add(next);
+            added.add(next);
+            for (int i = 0; i < lists.size(); i++) {
+                List<T> list = lists.get(i);
+                while (heads[i] < list.size() && added.contains(list.get(heads[i])))
+                    if (++heads[i] < list.size() && i < linearizations.size())
+                        tails.merge(list.get(heads[i]), -1, Integer::sum);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ist.meic.pava;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Runtime support for parallel combinations (@extension_10): the combined methods are evaluated concurrently on the
+// common ForkJoin pool (the first one on the calling thread) and their results are then reduced
+// The exceptions of the methods reach the caller as they were thrown (including the checked ones the combined method declares)
+// The timeout starts before the first method is called, but it is only checked once that method returns, and the methods still
+// running when it expires are not interrupted (cancelling a CompletableFuture does not interrupt its task): they run to completion
+// and their results are discarded
+public final class ParallelCombination {
+    private ParallelCombination() {}
+
+    public static Object invoke(Contributors contributors, Object receiver, Object[] args, String operation, long timeout) {
+        int size = contributors.size();
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        CompletableFuture<Object>[] futures = new CompletableFuture[size];
+        for (int i = 1; i < size; i++) {
+            int index = i;
+            futures[i] = CompletableFuture.supplyAsync(() -> invoke(contributors, index, receiver, args));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        Object[] results = new Object[size];
+        try {
+            results[0] = contributors.invoke(0, receiver, args);
+
+            CompletableFuture<Void> all = CompletableFuture.allOf(Arrays.copyOfRange(futures, 1, size));
+            if (timeout > 0)
+                all.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            else
+                all.get();
+        } catch (TimeoutException e) {
+            for (int i = 1; i < size; i++)
+                futures[i].cancel(true);
+            throw new RuntimeException("Error: Parallel combination timed out after " + timeout + " ms", e);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+
+        for (int i = 1; i < size; i++)
+            results[i] = futures[i].join();
+
+        return reduce(operation, contributors.returnType(), results);
+    }
+
+    static Object invoke(Contributors contributors, int index, Object receiver, Object[] args) {
+        try {
+            return contributors.invoke(index, receiver, args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    // Combines the (boxed) results of the methods, in order, according to the operation
+    static Object reduce(String operation, Class<?> type, Object[] results) {
+        switch (operation) {
+        case "or":
+            for (Object result : results)
+                if ((Boolean)result)
+                    return true;
+            return false;
+        case "and":
+            for (Object result : results)
+                if (!(Boolean)result)
+                    return false;
+            return true;
+        case "sum":
+        case "prod":
+            return reduceNumbers(operation.equals("sum"), type, results);
+        case "collect":
+            return CombinationHandles.concat(type.getComponentType(), results);
+        default:
+            throw new RuntimeException("Error: Invalid parallel combination value [" + operation + "]! Values: ['or', 'and', 'sum', 'prod' and 'collect']");
+        }
+    }
+
+    // Without a numeric result type (e.g. Object, for the methods of a generic function) the runtime class of the results is used
+    static Object reduceNumbers(boolean sum, Class<?> type, Object[] results) {
+        if (!type.isPrimitive() && !Number.class.isAssignableFrom(type) || type == Number.class)
+            type = getNumberType(results);
+
+        if (type == double.class || type == Double.class || type == float.class || type == Float.class) {
+            double total = sum ? 0 : 1;
+            for (Object result : results)
+                total = sum ? total + ((Number)result).doubleValue() : total * ((Number)result).doubleValue();
+            return type == float.class || type == Float.class ? (Object)(float)total : (Object)total;
+        }
+
+        long total = sum ? 0 : 1;
+        for (Object result : results)
+            total = sum ? total + ((Number)result).longValue() : total * ((Number)result).longValue();
+
+        if (type == int.class || type == Integer.class)
+            return (int)total;
+        else if (type == short.class || type == Short.class)
+            return (short)total;
+        else if (type == byte.class || type == Byte.class)
+            return (byte)total;
+        return total;
+    }
+
+    // The class of all the results, or the widest one (Double if any is floating point and Long otherwise) when they differ
+    static Class<?> getNumberType(Object[] results) {
+        Class<?> type = results.length > 0 ? results[0].getClass() : Integer.class;
+        for (Object result : results) {
+            if (result.getClass() == type)
+                continue;
+            else if (result instanceof Double || result instanceof Float || type == Double.class || type == Float.class)
+                type = Double.class;
+            else
+                type = Long.class;
+        }
+
+        return type;
+    }
+
+    // Throws the exception of a method as it is, even if it is checked (the declared return type only allows "throw rethrow(e)")
+    static RuntimeException rethrow(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null)
+            e = e.getCause();
+        throw ParallelCombination.<RuntimeException>sneakyThrow(e);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T extends Throwable> T sneakyThrow(Throwable e) throws T {
+        throw (T)e;
+    }
+}
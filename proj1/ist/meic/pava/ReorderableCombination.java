@@ -0,0 +1,145 @@
+package ist.meic.pava;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// 'or' and 'and' combination (reorderable = true) whose methods are reordered by their runtime profile, as they must be free of side effects
+// For a window of calls every method is called (without short-circuiting, so the ones behind a method that always decides are
+// also measured) and counts how often it decides the result and how long it takes, then the call site is relinked with the
+// methods that cost the least per decision first (and short-circuiting, without the profiling) until the next window
+final class ReorderableCombination {
+    // Calls profiled before reordering the methods, and calls with the reordered methods before profiling them again
+    static final int PROFILE_CALLS = 1 << 12;
+    static final int PROFILE_PERIOD = 1 << 20;
+
+    private static final MethodHandle NANO_TIME;
+    private static final MethodHandle RECORD;
+    private static final MethodHandle TICK;
+    private static final MethodHandle OR;
+    private static final MethodHandle AND;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            NANO_TIME = lookup.findStatic(System.class, "nanoTime", MethodType.methodType(long.class));
+            RECORD = lookup.findVirtual(Profile.class, "record", MethodType.methodType(boolean.class, long.class, boolean.class));
+            TICK = lookup.findVirtual(ReorderableCombination.class, "tick", MethodType.methodType(void.class));
+            OR = lookup.findStatic(ReorderableCombination.class, "or", MethodType.methodType(boolean.class, boolean.class, boolean.class));
+            AND = lookup.findStatic(ReorderableCombination.class, "and", MethodType.methodType(boolean.class, boolean.class, boolean.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final MutableCallSite callSite;
+    private final MethodType type;
+    private final boolean decisive;
+    private final List<MethodHandle> methods;
+    private Integer[] order;
+    private Profile[] profiles;
+    private boolean profiling;
+
+    // Calls since the last relink (updated without synchronization, so it is approximate)
+    private int calls;
+
+    ReorderableCombination(MutableCallSite callSite, String operation, List<MethodHandle> methods, MethodType type) {
+        if (!operation.equals("or") && !operation.equals("and"))
+            throw new RuntimeException("Error: Invalid reorderable combination value [" + operation + "]! Values: ['or' and 'and']");
+
+        this.callSite = callSite;
+        this.type = type;
+        this.decisive = operation.equals("or");
+        this.methods = methods;
+        this.order = new Integer[methods.size()];
+        for (int i = 0; i < this.order.length; i++)
+            this.order[i] = i;
+    }
+
+    // Links the call site to all the methods, in their current order, profiling each one of them
+    synchronized void profile() {
+        this.profiles = new Profile[this.methods.size()];
+        MethodHandle profiled = null;
+        for (int index : this.order) {
+            this.profiles[index] = new Profile(this.decisive);
+            MethodHandle record = MethodHandles.collectArguments(RECORD.bindTo(this.profiles[index]), 1, this.methods.get(index));
+            record = MethodHandles.foldArguments(record, NANO_TIME);
+            profiled = profiled == null ? record : CombinationHandles.reduce(this.decisive ? OR : AND, profiled, record, this.type);
+        }
+
+        this.profiling = true;
+        link(profiled);
+    }
+
+    // Sorts the methods by their time per decision (the ones that never decided go last, in their current order) and links them as they are
+    synchronized void reorder() {
+        Profile[] profiles = this.profiles;
+        Arrays.sort(this.order, Comparator.comparingDouble(index -> profiles[index].cost()));
+
+        List<MethodHandle> reordered = new ArrayList<MethodHandle>();
+        for (int index : this.order)
+            reordered.add(this.methods.get(index));
+
+        this.profiling = false;
+        link(CombinationHandles.shortCircuit(reordered, this.type, this.decisive));
+    }
+
+    void link(MethodHandle combined) {
+        this.calls = 0;
+        this.callSite.setTarget(MethodHandles.foldArguments(combined, TICK.bindTo(this)));
+    }
+
+    // Called before each call of the combination, switches between profiling and reordering the methods at the end of each window
+    void tick() {
+        boolean profiling = this.profiling;
+        if (++this.calls >= (profiling ? PROFILE_CALLS : PROFILE_PERIOD))
+            endWindow(profiling);
+    }
+
+    synchronized void endWindow(boolean profiling) {
+        // another thread may have ended the window already
+        if (this.profiling != profiling || this.calls < (profiling ? PROFILE_CALLS : PROFILE_PERIOD))
+            return;
+
+        if (profiling)
+            reorder();
+        else
+            profile();
+    }
+
+    // Combine the results of the profiled methods (every one of them is called)
+    static boolean or(boolean a, boolean b) {
+        return a || b;
+    }
+
+    static boolean and(boolean a, boolean b) {
+        return a && b;
+    }
+
+    // Decisions and time (in nanoseconds) of a method during a profiling window
+    static class Profile {
+        private final boolean decisive;
+        private long decisions;
+        private long time;
+
+        Profile(boolean decisive) {
+            this.decisive = decisive;
+        }
+
+        boolean record(long start, boolean result) {
+            this.time += System.nanoTime() - start;
+            if (result == this.decisive)
+                this.decisions++;
+            return result;
+        }
+
+        double cost() {
+            return this.decisions > 0 ? (double)this.time / this.decisions : Double.POSITIVE_INFINITY;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ist.meic.pava;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+
+// Offline (build-time) weaver: applies the same combinations as UsingMethodCombinationExtended, but once,
+// writing the woven class files so they can later be run on a plain classpath (without javassist)
+public class WeaveMethodCombination {
+    public static void main(String[] args) throws Throwable {
+        if (args.length != 2) {
+            System.err.println("Usage: java -classpath javassist.jar:. ist.meic.pava.WeaveMethodCombination <input dir|jar> <output dir|jar>");
+            System.exit(1);
+        } else {
+            Path input = Paths.get(args[0]);
+            Path output = Paths.get(args[1]);
+
+            WeaveMethodCombination weaver = new WeaveMethodCombination(input);
+            if (Files.isDirectory(input))
+                weaver.weaveDirectory(input, output);
+            else
+                weaver.weaveJar(input, output);
+        }
+    }
+
+    private ClassPool pool;
+    private CombineTranslator translator;
+
+    public WeaveMethodCombination(Path input) throws NotFoundException, CannotCompileException {
+        this.pool = new ClassPool(true);
+        this.pool.appendClassPath(input.toString());
+        // the input is indexed (see CombinationIndex) if it has an index, even if it is not in the class path
+        this.translator = new CombineTranslator(input + File.pathSeparator + CombineTranslator.INDEX);
+        this.translator.start(this.pool);
+    }
+
+    // Weaves every class file of a directory tree into the output directory (other files are copied as they are)
+    void weaveDirectory(Path input, Path output) throws IOException, NotFoundException, CannotCompileException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(input)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        for (Path file : files) {
+            String entryName = input.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+            Path target = output.resolve(input.relativize(file));
+            Files.createDirectories(target.getParent());
+            if (isClassFile(entryName))
+                Files.write(target, weave(getClassName(entryName)));
+            else
+                Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Weaves every class file of a jar into the output jar (other entries are copied as they are)
+    void weaveJar(Path input, Path output) throws IOException, NotFoundException, CannotCompileException {
+        if (output.getParent() != null)
+            Files.createDirectories(output.getParent());
+
+        try (JarFile jar = new JarFile(input.toFile()); JarOutputStream out = new JarOutputStream(Files.newOutputStream(output))) {
+            List<JarEntry> entries = new ArrayList<JarEntry>();
+            for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements();)
+                entries.add(e.nextElement());
+
+            for (JarEntry entry : entries) {
+                out.putNextEntry(new JarEntry(entry.getName()));
+                if (!entry.isDirectory()) {
+                    if (isClassFile(entry.getName()))
+                        out.write(weave(getClassName(entry.getName())));
+                    else
+                        copy(jar.getInputStream(entry), out);
+                }
+                out.closeEntry();
+            }
+        }
+    }
+
+    // Combines the methods of a single class and returns its new bytecode
+    byte[] weave(String className) throws IOException, NotFoundException, CannotCompileException {
+        this.translator.onLoad(this.pool, className);
+        CtClass ctClass = this.pool.get(className);
+        byte[] bytecode = ctClass.toBytecode();
+
+        // the next classes must be combined against the original (not woven) version of this class
+        ctClass.detach();
+        return bytecode;
+    }
+
+    boolean isClassFile(String entryName) {
+        return entryName.endsWith(".class") && !entryName.endsWith("module-info.class") && !entryName.startsWith("META-INF/");
+    }
+
+    String getClassName(String entryName) {
+        return entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.');
+    }
+
+    void copy(InputStream in, OutputStream out) throws IOException {
+        try (InputStream is = in) {
+            is.transferTo(out);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ist.meic.pava;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Weaving of a class by the CombineTranslator (with the ist.meic.pava.jfr option)
+@Name("ist.meic.pava.Weaving")
+@Label("Method Combination Weaving")
+@Category("Method Combination")
+@Description("Combination of the methods of a class")
+@Enabled(false)
+@StackTrace(false)
+public class WeavingEvent extends Event {
+    @Label("Class")
+    String className;
+
+    @Label("Bytes Added")
+    @DataAmount
+    long bytesAdded;
+
+    void end(String className, long bytesAdded) {
+        this.className = className;
+        this.bytesAdded = bytesAdded;
+        commit();
+    }
+}
@@ -0,0 +1,216 @@
+package ist.meic.pava;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+// Metrics of the CombineTranslator, enabled with the ist.meic.pava.metrics option: they are readable through JMX
+// (ist.meic.pava:type=WeavingMetrics) and dumped to the standard error when the program exits
+public class WeavingMetrics implements WeavingMetricsMBean {
+    private static final int SLOWEST_CLASSES = 10;
+
+    private LongAdder classesSeen = new LongAdder();
+    private LongAdder classesRewritten = new LongAdder();
+    private LongAdder methodsCopied = new LongAdder();
+    private LongAdder bytesAdded = new LongAdder();
+    private Histogram scanTime = new Histogram();
+    private Histogram compileTime = new Histogram();
+
+    // Weaving time and bytes added by each rewritten class
+    private Map<String, long[]> rewrittenClasses = new ConcurrentHashMap<String, long[]>();
+
+    // Last class pool used by the translator (to report its size)
+    private volatile WeakReference<ClassPool> pool = new WeakReference<ClassPool>(null);
+
+    // Creates the metrics and registers them on the platform MBean server
+    static WeavingMetrics register() {
+        WeavingMetrics metrics = new WeavingMetrics();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("ist.meic.pava:type=WeavingMetrics"));
+        } catch (Exception e) {
+            System.err.println("Error: Could not register the weaving metrics (" + e + ")");
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.println(metrics.dump())));
+        return metrics;
+    }
+
+    void classSkipped() {
+        this.classesSeen.increment();
+    }
+
+    void classWoven(ClassPool pool, CtClass ctClass, long time, int originalSize) {
+        this.classesSeen.increment();
+        this.pool = new WeakReference<ClassPool>(pool);
+        if (!ctClass.isModified())
+            return;
+
+        this.classesRewritten.increment();
+        long added = classFileSize(ctClass) - originalSize;
+        this.bytesAdded.add(added);
+        this.rewrittenClasses.put(ctClass.getName(), new long[] { time, added });
+    }
+
+    void scanned(long time) {
+        this.scanTime.record(time);
+    }
+
+    void compiled(long time) {
+        this.compileTime.record(time);
+    }
+
+    void methodCopied() {
+        this.methodsCopied.increment();
+    }
+
+    // Size of the class file of a class, as it is now
+    static int classFileSize(CtClass ctClass) {
+        int[] size = new int[1];
+        OutputStream counter = new OutputStream() {
+            @Override
+            public void write(int b) {
+                size[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                size[0] += len;
+            }
+        };
+
+        try {
+            ctClass.getClassFile2().write(new DataOutputStream(counter));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return size[0];
+    }
+
+    @Override
+    public long getClassesSeen() {
+        return this.classesSeen.sum();
+    }
+
+    @Override
+    public long getClassesRewritten() {
+        return this.classesRewritten.sum();
+    }
+
+    @Override
+    public long getClassesSkipped() {
+        return getClassesSeen() - getClassesRewritten();
+    }
+
+    @Override
+    public long getScanTime() {
+        return this.scanTime.total.sum();
+    }
+
+    @Override
+    public long getCompileTime() {
+        return this.compileTime.total.sum();
+    }
+
+    @Override
+    public long[] getScanTimeHistogram() {
+        return this.scanTime.buckets();
+    }
+
+    @Override
+    public long[] getCompileTimeHistogram() {
+        return this.compileTime.buckets();
+    }
+
+    @Override
+    public long getMethodsCopied() {
+        return this.methodsCopied.sum();
+    }
+
+    @Override
+    public long getBytesAdded() {
+        return this.bytesAdded.sum();
+    }
+
+    // The classes of a ClassPool are only reachable through its (protected) table
+    @Override
+    public int getClassPoolSize() {
+        ClassPool pool = this.pool.get();
+        if (pool == null)
+            return 0;
+
+        try {
+            Field classes = ClassPool.class.getDeclaredField("classes");
+            classes.setAccessible(true);
+            return ((Map<?, ?>)classes.get(pool)).size();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String[] getSlowestClasses() {
+        return this.rewrittenClasses.entrySet().stream().sorted((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0])).limit(SLOWEST_CLASSES)
+                .map(e -> e.getKey() + ": " + e.getValue()[0] / 1000 + "us, " + e.getValue()[1] + " bytes added").toArray(String[]::new);
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder dump = new StringBuilder("Weaving metrics:\n");
+        dump.append("  classes seen: " + getClassesSeen() + ", rewritten: " + getClassesRewritten() + ", skipped: " + getClassesSkipped() + "\n");
+        dump.append("  scan time: " + getScanTime() / 1000 + "us " + Arrays.toString(getScanTimeHistogram()) + "\n");
+        dump.append("  compile time: " + getCompileTime() / 1000 + "us " + Arrays.toString(getCompileTimeHistogram()) + "\n");
+        dump.append("  methods copied: " + getMethodsCopied() + ", bytes added: " + getBytesAdded() + ", class pool size: " + getClassPoolSize() + "\n");
+        dump.append("  slowest classes:\n");
+        for (String slowestClass : getSlowestClasses())
+            dump.append("    " + slowestClass + "\n");
+
+        return dump.toString();
+    }
+
+    @Override
+    public void reset() {
+        this.classesSeen.reset();
+        this.classesRewritten.reset();
+        this.methodsCopied.reset();
+        this.bytesAdded.reset();
+        this.scanTime = new Histogram();
+        this.compileTime = new Histogram();
+        this.rewrittenClasses.clear();
+    }
+
+    // Timing histogram with power of ten buckets, from 10us to 100ms
+    static class Histogram {
+        private static final long[] LIMITS = { 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000 };
+
+        private LongAdder total = new LongAdder();
+        private AtomicLongArray counts = new AtomicLongArray(LIMITS.length + 1);
+
+        void record(long time) {
+            this.total.add(time);
+            int bucket = 0;
+            while (bucket < LIMITS.length && time >= LIMITS[bucket])
+                bucket++;
+            this.counts.incrementAndGet(bucket);
+        }
+
+        long[] buckets() {
+            long[] buckets = new long[this.counts.length()];
+            for (int i = 0; i < buckets.length; i++)
+                buckets[i] = this.counts.get(i);
+            return buckets;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ist.meic.pava;
+
+// Management interface of WeavingMetrics (registered as ist.meic.pava:type=WeavingMetrics)
+// The times are in nanoseconds and the histograms count the classes woven in under 10us, 100us, 1ms, 10ms, 100ms and above
+public interface WeavingMetricsMBean {
+    long getClassesSeen();
+
+    long getClassesRewritten();
+
+    long getClassesSkipped();
+
+    long getScanTime();
+
+    long getCompileTime();
+
+    long[] getScanTimeHistogram();
+
+    long[] getCompileTimeHistogram();
+
+    long getMethodsCopied();
+
+    long getBytesAdded();
+
+    int getClassPoolSize();
+
+    // Classes that took the longest to weave, with their time and the bytes added
+    String[] getSlowestClasses();
+
+    String dump();
+
+    void reset();
+}
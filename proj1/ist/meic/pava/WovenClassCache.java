@@ -0,0 +1,113 @@
+package ist.meic.pava;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javassist.bytecode.ClassFile;
+
+// Content-addressed on-disk cache of woven classes
+// The key of a class covers its bytecode, the bytecode of all its supertypes (the ones visited when retrieving
+// the combination methods) and the weaver version, so any change to the hierarchy results in a new entry
+class WovenClassCache {
+    private static final String[] IGNORED_PACKAGES = { "java/", "javax/", "jdk/", "sun/", "com/sun/" };
+
+    private Path directory;
+
+    // Digest of the hierarchy of each (already seen) type, by class loader
+    private Map<ClassLoader, Map<String, byte[]>> hierarchyDigests = new WeakHashMap<ClassLoader, Map<String, byte[]>>();
+
+    WovenClassCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    // Returns the woven bytecode stored for the given key (null if none)
+    byte[] get(String key) throws IOException {
+        Path file = this.directory.resolve(key);
+        if (!Files.exists(file))
+            return null;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] bytecode = new byte[buffer.remaining()];
+            buffer.get(bytecode);
+            return bytecode;
+        }
+    }
+
+    // Stores the woven bytecode (the file is written aside and then moved, so readers never see partial entries)
+    void put(String key, byte[] bytecode) throws IOException {
+        Path temp = Files.createTempFile(this.directory, key, ".tmp");
+        Files.write(temp, bytecode);
+        Files.move(temp, this.directory.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Computes the cache key of a class, given its (original) bytecode
+    String key(ClassLoader loader, byte[] bytecode) throws IOException {
+        MessageDigest digest = newDigest();
+        digest.update(CombineTranslator.weaverVersion().getBytes(StandardCharsets.UTF_8));
+        digest.update(hierarchyDigest(loader, bytecode));
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest())
+            key.append(String.format("%02x", b));
+
+        return key.toString();
+    }
+
+    byte[] hierarchyDigest(ClassLoader loader, byte[] bytecode) throws IOException {
+        ClassFile classFile = new ClassFile(new DataInputStream(new ByteArrayInputStream(bytecode)));
+        MessageDigest digest = newDigest();
+        digest.update(bytecode);
+
+        if (classFile.getSuperclass() != null)
+            digest.update(hierarchyDigest(loader, classFile.getSuperclass()));
+        for (String ctInterface : classFile.getInterfaces())
+            digest.update(hierarchyDigest(loader, ctInterface));
+
+        return digest.digest();
+    }
+
+    byte[] hierarchyDigest(ClassLoader loader, String className) throws IOException {
+        String resourceName = className.replace('.', '/');
+        for (String ignoredPackage : IGNORED_PACKAGES)
+            if (resourceName.startsWith(ignoredPackage))
+                return new byte[0];
+
+        Map<String, byte[]> digests = getHierarchyDigests(loader);
+        byte[] digest = digests.get(className);
+        if (digest == null) {
+            try (InputStream in = loader.getResourceAsStream(resourceName + ".class")) {
+                digest = in != null ? hierarchyDigest(loader, in.readAllBytes()) : new byte[0];
+            }
+            digests.put(className, digest);
+        }
+
+        return digest;
+    }
+
+    synchronized Map<String, byte[]> getHierarchyDigests(ClassLoader loader) {
+        return this.hierarchyDigests.computeIfAbsent(loader, l -> new ConcurrentHashMap<String, byte[]>());
+    }
+
+    MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
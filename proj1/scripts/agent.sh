@@ -0,0 +1,21 @@
+#/bin/bash
+
+if [ "$#" -ne 1 ]; then
+    echo "Usage: sh scripts/agent.sh <TestClass>"
+    return
+fi
+
+rm -rf target/ agent/
+mkdir target/ agent/
+
+javac -d target/ test/$1.java
+javac -d agent/ -classpath lib/javassist.jar:. ist/meic/pava/UsingMethodCombinationExtended.java ist/meic/pava/CombinationAgent.java ist/meic/pava/WovenClassCache.java
+
+# the combination methods of target/ are indexed, so the agent does not scan them
+java -classpath agent/:lib/javassist.jar ist.meic.pava.CombinationIndex target/
+
+printf "Premain-Class: ist.meic.pava.CombinationAgent\nAgent-Class: ist.meic.pava.CombinationAgent\nClass-Path: ../lib/javassist.jar\n" > agent/MANIFEST.MF
+jar cfm agent/combination-agent.jar agent/MANIFEST.MF -C agent/ ist
+
+# the program runs on the usual application class loader (woven classes are kept in cache/ between runs)
+java -javaagent:agent/combination-agent.jar=cache=cache/ -classpath target/ test.$1
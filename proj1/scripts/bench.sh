@@ -0,0 +1,23 @@
+#/bin/bash
+
+# Runs the JMH benchmarks of bench/ (expects the JMH jars, e.g. jmh-core, jmh-generator-annprocess, jopt-simple and commons-math3, in lib/jmh/)
+# The benchmark options are passed to JMH (e.g. sh scripts/bench.sh -f 2 'CombinationBenchmark.sum.*'), and the weaving options
+# can be given in JAVA_OPTS (e.g. JAVA_OPTS=-Dist.meic.pava.indy=true sh scripts/bench.sh)
+
+if [ ! -d lib/jmh/ ]; then
+    echo "Usage: sh scripts/bench.sh [JMH options] (the JMH jars must be in lib/jmh/)"
+    return
+fi
+
+rm -rf bench-target/
+mkdir -p bench-target/model/ bench-target/weaver/ bench-target/woven/ bench-target/benchmarks/
+
+# the hierarchies are woven offline, so the benchmarks measure the woven calls only
+javac -d bench-target/model/ -classpath . bench/bench/Workers.java
+javac -d bench-target/weaver/ -classpath lib/javassist.jar:. ist/meic/pava/UsingMethodCombinationExtended.java ist/meic/pava/WeaveMethodCombination.java
+java $JAVA_OPTS -classpath bench-target/weaver/:lib/javassist.jar ist.meic.pava.WeaveMethodCombination bench-target/model/ bench-target/woven/
+
+javac -d bench-target/benchmarks/ -classpath "bench-target/woven/:lib/jmh/*" -processorpath "lib/jmh/*" bench/bench/CombinationBenchmark.java
+
+# the GC profiler reports the allocation rate of each benchmark
+java -classpath "bench-target/benchmarks/:bench-target/woven/:bench-target/weaver/:lib/jmh/*" org.openjdk.jmh.Main -prof gc "$@"
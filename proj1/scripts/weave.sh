@@ -0,0 +1,16 @@
+#/bin/bash
+
+if [ "$#" -ne 1 ]; then
+    echo "Usage: sh scripts/weave.sh <TestClass>"
+    return
+fi
+
+rm -rf target/ weaver/ woven/
+mkdir target/ weaver/ woven/
+
+javac -d target/ test/$1.java
+javac -d weaver/ -classpath lib/javassist.jar:. ist/meic/pava/UsingMethodCombinationExtended.java ist/meic/pava/WeaveMethodCombination.java
+java -classpath weaver/:lib/javassist.jar ist.meic.pava.WeaveMethodCombination target/ woven/
+
+# the woven classes run on a plain classpath, without javassist (only the ist.meic.pava runtime classes are needed)
+java -classpath woven/:weaver/ test.$1
@@ -0,0 +1,98 @@
+package test;
+
+import java.util.concurrent.CompletableFuture;
+
+import ist.meic.pava.Combination;
+
+interface Remote {
+    static <T> CompletableFuture<T> fetch(String source, T value) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return value;
+        });
+    }
+}
+
+interface Inventory {
+    @Combination("sum")
+    default CompletableFuture<Integer> stock(String item) {
+        return Remote.fetch("inventory", 7);
+    }
+
+    @Combination("or")
+    default CompletableFuture<Boolean> isAvailable(String item) {
+        System.out.println("  asking the inventory");
+        return Remote.fetch("inventory", item.equals("apples"));
+    }
+}
+
+class Store {
+    @Combination("sum")
+    public CompletableFuture<Integer> stock(String item) {
+        return Remote.fetch("store", 3);
+    }
+
+    @Combination("or")
+    public CompletableFuture<Boolean> isAvailable(String item) {
+        System.out.println("  asking the store");
+        return Remote.fetch("store", false);
+    }
+
+    @Combination("collect")
+    public CompletableFuture<String[]> suppliers() {
+        return Remote.fetch("store", new String[] { "Local" });
+    }
+
+    @Combination("standard")
+    public void before_order(String item) {
+        System.out.println("  [Store] before order");
+    }
+
+    @Combination("standard")
+    public CompletableFuture<String> order(String item) {
+        return Remote.fetch("orders", String.format("order #1 (%s)", item));
+    }
+
+    @Combination("standard")
+    public CompletableFuture<Void> after_order(String item) {
+        return Remote.fetch("audit", null);
+    }
+}
+
+class OnlineStore extends Store implements Inventory {
+    @Combination("collect")
+    public CompletableFuture<String[]> suppliers() {
+        return Remote.fetch("online store", new String[] { "Warehouse", "Partner" });
+    }
+
+    @Combination("standard")
+    public void before_order(String item) {
+        System.out.println("  [OnlineStore] before order");
+    }
+}
+
+public class AsyncExample {
+    public static void main(String[] args) {
+        OnlineStore store = new OnlineStore();
+
+        System.out.println("Stock:");
+        System.out.println("  = " + store.stock("apples").join());
+
+        // the store is only asked after the inventory answers (and it is not asked at all if the inventory says yes)
+        System.out.println("Is available:");
+        System.out.println("  = " + store.isAvailable("apples").join());
+        System.out.println("  = " + store.isAvailable("pears").join());
+
+        System.out.println("Suppliers:");
+        System.out.println("  = " + String.join(", ", store.suppliers().join()));
+
+        System.out.println("Order:");
+        CompletableFuture<String> order = store.order("apples");
+        System.out.println("  (not blocked)");
+        System.out.println("  = " + order.join());
+    }
+}
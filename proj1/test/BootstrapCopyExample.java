@@ -0,0 +1,59 @@
+package test;
+
+import java.util.function.Supplier;
+
+import ist.meic.pava.Combination;
+
+// The methods concatenate strings (and Book also creates a lambda), so the copies of the inherited methods call the bootstrap methods
+// of the types that declare them, which are not the ones of Book
+interface Labeled {
+    @Combination("collect")
+    default String[] labels() {
+        String shelf = "fiction";
+        return new String[] { "shelved in " + shelf.toUpperCase() };
+    }
+}
+
+interface Priced {
+    @Combination("collect")
+    default String[] labels() {
+        int price = 12;
+        return new String[] { "priced at " + price + " euros" };
+    }
+}
+
+class Item implements Labeled {
+    public String name() {
+        return "item";
+    }
+
+    @Combination("collect")
+    public String[] labels() {
+        return new String[] { "one " + name() };
+    }
+}
+
+class Book extends Item implements Priced {
+    public String name() {
+        return "book";
+    }
+
+    public int price() {
+        return 12;
+    }
+
+    @Combination("collect")
+    public String[] labels() {
+        Supplier<String> label = () -> "a " + name() + " of " + price() + " pages";
+        return new String[] { label.get() };
+    }
+}
+
+// sh scripts/run.sh BootstrapCopyExample (and with -Dist.meic.pava.indy=true)
+public class BootstrapCopyExample {
+
+    public static void main(String[] args) {
+        for (String label : new Book().labels())
+            System.out.println("\t - " + label);
+    }
+}
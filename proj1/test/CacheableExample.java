@@ -0,0 +1,55 @@
+package test;
+
+import ist.meic.pava.Combination;
+import ist.meic.pava.CombinationCache;
+
+class Employee {
+    int overtimeHours;
+
+    @Combination(value = "or", cacheable = true)
+    public boolean isHardWorker() {
+        System.out.println("  Employee: checking the overtime");
+        return overtimeHours > 10;
+    }
+
+    @Combination(value = "sum", cacheable = true, cacheSize = 16)
+    public int salary(int months) {
+        System.out.println("  Employee: computing the base salary");
+        return 1000 * months;
+    }
+}
+
+interface Volunteer {
+    @Combination(value = "or", cacheable = true)
+    default boolean isHardWorker() {
+        System.out.println("  Volunteer: checking the volunteering");
+        return false;
+    }
+}
+
+class Nurse extends Employee implements Volunteer {
+    @Combination(value = "sum", cacheable = true, cacheSize = 16)
+    public int salary(int months) {
+        System.out.println("  Nurse: computing the night shifts");
+        return 200 * months;
+    }
+}
+
+public class CacheableExample {
+
+    public static void main(String[] args) {
+        Nurse nurse = new Nurse();
+
+        System.out.println("Is a hard worker? " + nurse.isHardWorker());
+        System.out.println("Is a hard worker? (cached) " + nurse.isHardWorker());
+
+        nurse.overtimeHours = 20;
+        System.out.println("Is a hard worker? (stale) " + nurse.isHardWorker());
+        CombinationCache.invalidate(nurse);
+        System.out.println("Is a hard worker? (invalidated) " + nurse.isHardWorker());
+
+        System.out.println("Salary for 2 months: " + nurse.salary(2));
+        System.out.println("Salary for 2 months: (cached) " + nurse.salary(2));
+        System.out.println("Salary for 3 months: " + nurse.salary(3));
+    }
+}
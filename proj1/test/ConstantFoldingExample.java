@@ -0,0 +1,77 @@
+package test;
+
+import ist.meic.pava.Combination;
+
+interface Rechargeable {
+    @Combination("or")
+    default boolean isAutonomous() {
+        return true;
+    }
+
+    @Combination("and")
+    default boolean isSafe() {
+        return true;
+    }
+
+    @Combination("sum")
+    default long weight() {
+        return 3000000000L;
+    }
+}
+
+class Robot {
+    int batteries;
+
+    @Combination("or")
+    public boolean isAutonomous() {
+        System.out.println("  Robot: checking the batteries");
+        return batteries > 1;
+    }
+
+    @Combination("and")
+    public boolean isSafe() {
+        return false;
+    }
+
+    @Combination("sum")
+    public long weight() {
+        return 40;
+    }
+
+    @Combination("prod")
+    public int cost(int units) {
+        return 7;
+    }
+}
+
+class Android extends Robot implements Rechargeable {
+    @Combination("and")
+    public boolean isSafe() {
+        System.out.println("  Android: checking the sensors");
+        return true;
+    }
+
+    @Combination("sum")
+    public long weight() {
+        System.out.println("  Android: weighing the arms");
+        return 2;
+    }
+
+    @Combination("prod")
+    public int cost(int units) {
+        System.out.println("  Android: pricing the units");
+        return units;
+    }
+}
+
+public class ConstantFoldingExample {
+
+    public static void main(String[] args) {
+        Android android = new Android();
+
+        System.out.println("Is autonomous? " + android.isAutonomous());
+        System.out.println("Is safe? " + android.isSafe());
+        System.out.println("Weight: " + android.weight());
+        System.out.println("Cost of 3 units: " + android.cost(3));
+    }
+}
@@ -0,0 +1,87 @@
+package test;
+
+import java.lang.invoke.MethodHandles;
+
+import ist.meic.pava.Combination;
+import ist.meic.pava.GenericFunction;
+
+class SpaceObject {}
+
+class Asteroid extends SpaceObject {}
+
+class Ship extends SpaceObject {}
+
+class Collisions {
+    @Combination("standard")
+    static void before_collide(SpaceObject a, SpaceObject b) {
+        System.out.print("Collision: ");
+    }
+
+    @Combination("standard")
+    static String collide(SpaceObject a, SpaceObject b) {
+        return "they bounce";
+    }
+
+    @Combination("standard")
+    static String collide(Asteroid a, Ship b) {
+        return "the ship is destroyed";
+    }
+
+    @Combination("standard")
+    static String collide(Ship a, Asteroid b) {
+        return "the ship dodges the asteroid";
+    }
+
+    @Combination("standard")
+    static void after_collide(Ship a, SpaceObject b) {
+        System.out.print("(the ship reports the collision) ");
+    }
+}
+
+// The generic functions are called directly, so this example runs without weaving (java -classpath target/ test.GenericFunctionExample),
+// and its static methods must be left as they are when it is woven (sh scripts/run.sh GenericFunctionExample)
+public class GenericFunctionExample {
+
+    public static void main(String[] args) throws Throwable {
+        GenericFunction collide = GenericFunction.of(MethodHandles.lookup(), Collisions.class, "collide");
+
+        // @formatter:off
+        SpaceObject[] objects = new SpaceObject[] {
+            new Asteroid(),
+            new Ship(),
+        };
+        // @formatter:on
+
+        for (SpaceObject a : objects)
+            for (SpaceObject b : objects) {
+                Object result = collide.call(a, b);
+                if (result == null)
+                    throw new RuntimeException("Error: The methods of [collide] were combined by the weaver");
+                System.out.println(result);
+            }
+
+        GenericFunction damage = new GenericFunction("damage", "sum", 2);
+        damage.addMethod("", d -> 1, SpaceObject.class, SpaceObject.class);
+        damage.addMethod("", d -> 10, Asteroid.class, SpaceObject.class);
+        damage.addMethod("", d -> 100, SpaceObject.class, Ship.class);
+        damage.addMethod("", d -> 1000, Asteroid.class, Ship.class);
+
+        for (SpaceObject a : objects)
+            for (SpaceObject b : objects)
+                System.out.println(a.getClass().getSimpleName() + " on " + b.getClass().getSimpleName() + ": " + damage.call(a, b) + " damage");
+
+        // the results of the bodies are reduced by their own (floating point) type
+        GenericFunction speed = new GenericFunction("speed", "sum", 1);
+        speed.addMethod("", d -> 1.5, SpaceObject.class);
+        speed.addMethod("", d -> 2.25, Ship.class);
+        GenericFunction mass = new GenericFunction("mass", "prod", 1);
+        mass.addMethod("", d -> 2.5f, SpaceObject.class);
+        mass.addMethod("", d -> 0.5f, Asteroid.class);
+
+        for (SpaceObject a : objects)
+            System.out.println(a.getClass().getSimpleName() + ": speed " + speed.call(a) + ", mass " + mass.call(a));
+
+        if (!(damage.call(objects[0], objects[1]) instanceof Integer) || !(speed.call(objects[1]) instanceof Double) || !(mass.call(objects[0]) instanceof Float))
+            throw new RuntimeException("Error: The results were not reduced by their own type");
+    }
+}
@@ -0,0 +1,119 @@
+package test;
+
+import java.io.IOException;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import ist.meic.pava.Combination;
+
+interface Weather {
+    @Combination(value = "sum", parallel = true, timeout = 5000)
+    default int score(String city) {
+        ParallelExample.meet();
+        return city.length();
+    }
+
+    @Combination(value = "or", parallel = true, parallelThreshold = 3)
+    default boolean isOpen() {
+        ParallelExample.work(200);
+        return false;
+    }
+}
+
+interface Traffic {
+    @Combination(value = "sum", parallel = true, timeout = 5000)
+    default int score(String city) {
+        ParallelExample.meet();
+        return 10;
+    }
+
+    @Combination(value = "collect", parallel = true)
+    default String[] tags() {
+        ParallelExample.work(200);
+        return new String[] { "traffic" };
+    }
+
+    // called first, on the calling thread
+    @Combination(value = "sum", parallel = true)
+    default int cost(String city) throws IOException {
+        if (city.isEmpty())
+            throw new IOException("no city");
+        return 4;
+    }
+}
+
+class Service {
+    @Combination(value = "sum", parallel = true, timeout = 5000)
+    public int score(String city) {
+        ParallelExample.meet();
+        return 1;
+    }
+
+    @Combination(value = "or", parallel = true, parallelThreshold = 3)
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Combination(value = "collect", parallel = true)
+    public String[] tags() {
+        ParallelExample.work(200);
+        return new String[] { "service" };
+    }
+
+    // called on another thread
+    @Combination(value = "sum", parallel = true)
+    public int cost(String city) throws IOException {
+        if (city.equals("Atlantis"))
+            throw new IOException("closed city");
+        return 3;
+    }
+}
+
+class CityService extends Service implements Weather, Traffic {
+}
+
+public class ParallelExample {
+    // the three score methods wait for each other, which only happens when they run concurrently
+    static final CyclicBarrier scoring = new CyclicBarrier(3);
+    static volatile boolean overlapped = true;
+
+    static void meet() {
+        try {
+            scoring.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+            overlapped = false;
+        }
+    }
+
+    static void work(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) {
+        CityService service = new CityService();
+
+        int score = service.score("Lisbon");
+        System.out.println("Score: " + score + (overlapped ? " (in parallel)" : " (sequentially)"));
+
+        // only two methods are combined, which is below the threshold (sequential)
+        System.out.println("Is open: " + service.isOpen());
+
+        for (String tag : service.tags())
+            System.out.println("\t - " + tag);
+
+        // the checked exceptions reach the caller as they were thrown, by any of the methods
+        for (String city : new String[] { "Lisbon", "", "Atlantis" }) {
+            try {
+                System.out.println("Cost: " + service.cost(city));
+            } catch (IOException e) {
+                System.out.println("Cost failed: " + e.getMessage());
+            }
+        }
+    }
+}
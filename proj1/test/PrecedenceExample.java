@@ -0,0 +1,46 @@
+package test;
+
+import java.util.Arrays;
+
+import ist.meic.pava.Combination;
+
+interface Greeter {
+    @Combination("collect")
+    default String[] greetings() {
+        return new String[] { "Hello" };
+    }
+}
+
+interface Polite extends Greeter {
+    @Combination("collect")
+    default String[] greetings() {
+        return new String[] { "Good evening" };
+    }
+}
+
+class Host implements Greeter {
+    @Combination("collect")
+    public String[] greetings() {
+        return new String[] { "Welcome" };
+    }
+}
+
+// Greeter is shared by Polite and Host, so it comes after both of them (Butler, Polite, Host, Greeter)
+class Butler extends Host implements Polite {
+    @Combination("collect")
+    public String[] greetings() {
+        return new String[] { "Good evening, sir" };
+    }
+}
+
+// Host already implements Greeter, which still comes after it (Doorman, Host, Greeter)
+class Doorman extends Host implements Greeter {
+}
+
+public class PrecedenceExample {
+
+    public static void main(String[] args) {
+        System.out.println("Butler: " + Arrays.toString(new Butler().greetings()));
+        System.out.println("Doorman: " + Arrays.toString(new Doorman().greetings()));
+    }
+}
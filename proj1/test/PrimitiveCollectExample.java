@@ -0,0 +1,55 @@
+package test;
+
+import ist.meic.pava.Combination;
+
+interface Weekdays {
+    @Combination("collect")
+    default int[] workingHours() {
+        System.out.println("Weekdays: called");
+        return new int[] { 8, 8, 8, 8, 8 };
+    }
+
+    @Combination("collect")
+    default double[] grades() {
+        return new double[] { 17.5 };
+    }
+}
+
+interface Weekend {
+    @Combination("collect")
+    default int[] workingHours() {
+        System.out.println("Weekend: called");
+        return new int[] { 4, 0 };
+    }
+}
+
+class Worker {
+    @Combination("collect")
+    public int[] workingHours() {
+        System.out.println("Worker: called");
+        return null;
+    }
+
+    @Combination("collect")
+    public double[] grades() {
+        return new double[] { 12.0, 14.25 };
+    }
+}
+
+class Freelancer extends Worker implements Weekdays, Weekend {
+}
+
+public class PrimitiveCollectExample {
+    public static void main(String[] args) {
+        Freelancer freelancer = new Freelancer();
+
+        // each contributing method is called only once
+        int total = 0;
+        for (int hours : freelancer.workingHours())
+            total += hours;
+        System.out.println("Hours per week: " + total + "\n");
+
+        for (double grade : freelancer.grades())
+            System.out.println("\t - " + grade);
+    }
+}
@@ -0,0 +1,77 @@
+package test;
+
+import ist.meic.pava.Combination;
+
+interface Volunteering {
+    @Combination(value = "or", reorderable = true)
+    default boolean isHelpful(int hours) {
+        return hours > 0;
+    }
+
+    @Combination(value = "or", reorderable = true)
+    default boolean isRegistered(int id) {
+        return id >= 0;
+    }
+}
+
+// The checks counters are only probes of this example (the methods of a reorderable combination must be free of side effects)
+class Citizen implements Volunteering {
+    static int recordChecks = 0;
+    static int backgroundChecks = 0;
+
+    // slow, and it rarely decides the result
+    @Combination(value = "or", reorderable = true)
+    public boolean isHelpful(int hours) {
+        recordChecks++;
+        long donations = 0;
+        for (int i = 0; i < 1000; i++)
+            donations += i % 7;
+        return donations < 0;
+    }
+
+    // slow, and it always decides the result, so the faster method after it is only called while profiling
+    @Combination(value = "or", reorderable = true)
+    public boolean isRegistered(int id) {
+        backgroundChecks++;
+        long records = 0;
+        for (int i = 0; i < 1000; i++)
+            records += i % 7;
+        return records > id;
+    }
+}
+
+public class ReorderableExample {
+
+    public static void main(String[] args) {
+        Citizen citizen = new Citizen();
+
+        int helpful = 0;
+        for (int i = 0; i < 10000; i++)
+            if (citizen.isHelpful(1 + i % 5))
+                helpful++;
+        System.out.println("Helpful in " + helpful + " of the first 10000 calls");
+        System.out.println("The records were checked? " + (Citizen.recordChecks > 0));
+
+        Citizen.recordChecks = 0;
+        helpful = 0;
+        for (int i = 0; i < 10000; i++)
+            if (citizen.isHelpful(1 + i % 5))
+                helpful++;
+        System.out.println("Helpful in " + helpful + " of the next 10000 calls");
+        System.out.println("The records were checked? " + (Citizen.recordChecks > 0));
+
+        int registered = 0;
+        for (int i = 0; i < 10000; i++)
+            if (citizen.isRegistered(i % 5))
+                registered++;
+        System.out.println("Registered in " + registered + " of the first 10000 calls");
+
+        Citizen.backgroundChecks = 0;
+        registered = 0;
+        for (int i = 0; i < 10000; i++)
+            if (citizen.isRegistered(i % 5))
+                registered++;
+        System.out.println("Registered in " + registered + " of the next 10000 calls");
+        System.out.println("The backgrounds were checked? " + (Citizen.backgroundChecks > 0));
+    }
+}
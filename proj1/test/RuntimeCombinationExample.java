@@ -0,0 +1,93 @@
+package test;
+
+import ist.meic.pava.Combination;
+import ist.meic.pava.Combinations;
+
+class Worker {
+    String name;
+
+    public Worker(String name) {
+        this.name = name;
+    }
+
+    @Combination("standard")
+    public void introduce() {
+        System.out.print(name);
+    }
+
+    @Combination("or")
+    public boolean isHardWorker() {
+        return false;
+    }
+
+    @Combination("sum")
+    public int hoursPerWeek(int weeks) {
+        return 10 * weeks;
+    }
+}
+
+interface Overtime {
+    @Combination("or")
+    default boolean isHardWorker() {
+        return true;
+    }
+
+    @Combination("sum")
+    default int hoursPerWeek(int weeks) {
+        return 5 * weeks;
+    }
+
+    @Combination("standard")
+    default void after_introduce() {
+        System.out.print(" (works overtime)");
+    }
+}
+
+class Engineer extends Worker {
+    public Engineer(String name) {
+        super(name);
+    }
+
+    @Combination("standard")
+    public void before_introduce() {
+        System.out.print("Engineer ");
+    }
+
+    @Combination("or")
+    public boolean isHardWorker() {
+        return false;
+    }
+}
+
+class SeniorEngineer extends Engineer implements Overtime {
+    public SeniorEngineer(String name) {
+        super(name);
+    }
+
+    @Combination("sum")
+    public int hoursPerWeek(int weeks) {
+        return 20 * weeks;
+    }
+}
+
+// The combinations are called through the runtime engine, so this example runs without weaving:
+// java -classpath target/ test.RuntimeCombinationExample
+public class RuntimeCombinationExample {
+
+    public static void main(String[] args) throws Throwable {
+
+        // @formatter:off
+        Worker[] workers = new Worker[] {
+            new Worker("Mary"),
+            new Engineer("John"),
+            new SeniorEngineer("Anne"),
+        };
+        // @formatter:on
+
+        for (Worker worker : workers) {
+            Combinations.invoke(worker, "introduce");
+            System.out.println(" is a hard worker? " + Combinations.invoke(worker, "isHardWorker"));
+            System.out.println("Hours in 2 weeks: " + Combinations.invoke(worker, "hoursPerWeek", 2));
+        }
+    }
+}